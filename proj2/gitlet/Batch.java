@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Batch mode: runs many gitlet commands in one JVM.
+ *
+ *  Usage: java gitlet.Batch [FILE]
+ *
+ *  Reads one command per line from FILE, or from the standard input if
+ *  FILE is absent, and runs each as java gitlet.Main would.  Arguments
+ *  are separated by blanks; an argument containing blanks is written in
+ *  double quotes, as in the tester's scripts ("\"" and "\\" escape a
+ *  quote and a backslash inside quotes).  Blank lines and lines starting
+ *  with # are skipped.  After each command's output comes a delimiter
+ *  line of the form
+ *
+ *      DELIMITER N STATUS
+ *
+ *  where N counts commands from 1 and STATUS is the exit code, so that a
+ *  driver can split the output back into per-command results.
+ *
+ *  The branches, current branch and staging area are held in memory
+ *  between commands (see {@link Journal#hold}) and written to .gitlet
+ *  only at a line reading CHECKPOINT, which prints nothing, and at the
+ *  end.  Objects are written as the commands make them.  If another
+ *  gitlet process has meanwhile changed a branch the batch changed,
+ *  nothing is written, the conflict is reported, and the batch stops.
+ *
+ *  @author Alec Luk
+ */
+public class Batch {
+
+    /** Start of the line that follows each command's output. */
+    static final String DELIMITER = "#gitlet-batch-end";
+    /** The line asking for the state to be written out. */
+    static final String CHECKPOINT = "checkpoint";
+
+    /** Runs the commands in the file named by ARGS[0], or on the standard
+     *  input if ARGS is empty. */
+    public static void main(String[] args) throws IOException {
+        if (InProcess.relaunch(Batch.class, args)) {
+            return;
+        }
+        if (args.length > 1) {
+            Utils.message("Incorrect operands.");
+            System.exit(0);
+        }
+        Reader source = args.length == 0
+            ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+            : Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+        /* One large buffer for the whole run instead of a flush per line. */
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+            new FileOutputStream(FileDescriptor.out), 1 << 16),
+            false, StandardCharsets.UTF_8);
+        Journal journal = Journal.of(Repository.REPO_DIR);
+        int count = 0;
+        try (BufferedReader in = new BufferedReader(source)) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (line.isBlank() || line.trim().startsWith("#")) {
+                    continue;
+                } else if (line.trim().equals(CHECKPOINT)) {
+                    journal.flush();
+                    continue;
+                }
+                if (Repository.REPO_DIR.isFile()) {
+                    /* Not before init has written the state. */
+                    journal.hold();
+                }
+                count += 1;
+                int status = InProcess.run(split(line).toArray(new String[0]), out);
+                out.println(DELIMITER + " " + count + " " + status);
+            }
+            journal.flush();
+        } catch (GitletException excp) {
+            out.println(excp.getMessage());
+        } finally {
+            journal.release();
+            out.flush();
+        }
+    }
+
+    /** Returns the arguments on LINE. */
+    static List<String> split(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder arg = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                } else if (c == '\\' && i + 1 < line.length()
+                           && (line.charAt(i + 1) == '"' || line.charAt(i + 1) == '\\')) {
+                    i += 1;
+                    arg.append(line.charAt(i));
+                } else {
+                    arg.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (arg != null) {
+                    result.add(arg.toString());
+                    arg = null;
+                }
+            } else {
+                if (arg == null) {
+                    arg = new StringBuilder();
+                }
+                if (c == '"') {
+                    quoted = true;
+                } else {
+                    arg.append(c);
+                }
+            }
+        }
+        if (arg != null) {
+            result.add(arg.toString());
+        }
+        return result;
+    }
+}
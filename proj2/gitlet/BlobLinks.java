@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Checkout by hard link.  With the "checkout.hardlinks" setting of
+ *  {@link Config} on (it is off unless asked for), each blob checked out
+ *  is first written once, as a plain copy of its contents, to LINKS_DIR,
+ *  and a working file is then made a hard link to that copy: checking
+ *  the same blob out again, in any branch, copies no data at all.
+ *
+ *  A working file made this way shares its inode with the copy, so the
+ *  copy's mode and modification time are those of an ordinary file
+ *  checked out now, and nothing here changes them.  Each copy is linked
+ *  to at most one file at a time; another file with the same contents
+ *  is copied as usual, so that writing one file never changes another.
+ *  A write through the link does change the copy, so a copy is checked
+ *  against its blob id before it is linked again, and written afresh if
+ *  it no longer matches.  Where links cannot be made (another
+ *  filesystem, no support), files are copied as usual, by
+ *  FileChannel.transferTo.
+ *
+ *  @author Alec Luk
+ */
+class BlobLinks {
+
+    /** The directory of plain copies of blobs. */
+    static final File LINKS_DIR = join(GITLET_DIR, "links");
+    /** The setting turning checkout by link on. */
+    static final String LINKS_KEY = "checkout.hardlinks";
+
+    /** Returns true iff checkout is to use hard links. */
+    static boolean enabled() {
+        return Config.getBoolean(LINKS_KEY, false);
+    }
+
+    /** Makes DEST, which must not exist, hold the contents of blob
+     *  BLOBID: a hard link to its plain copy if possible, and a copy
+     *  otherwise. */
+    static void link(String blobId, File dest) {
+        try {
+            if (linkCopy(blobId, dest)) {
+                return;
+            }
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException
+                 | SecurityException excp) {
+            /* Copied below. */
+        }
+        copyBlob(ObjectPaths.of(BLOBS_DIR, blobId), dest);
+    }
+
+    /** Makes DEST a hard link to the plain copy of blob BLOBID, writing
+     *  the copy if it is missing or has been changed, and returns true;
+     *  or returns false if the copy is already linked to another file. */
+    private static synchronized boolean linkCopy(String blobId, File dest)
+        throws IOException {
+        File copy = ObjectPaths.of(LINKS_DIR, blobId);
+        if (copy.isFile() && (Integer) Files.getAttribute(copy.toPath(), "unix:nlink") > 1) {
+            return false;
+        } else if (!copy.isFile() || !sha1(copy).equals(blobId)) {
+            copy.getParentFile().mkdirs();
+            File temp = File.createTempFile(blobId, ".tmp", LINKS_DIR);
+            try {
+                copyBlob(ObjectPaths.of(BLOBS_DIR, blobId), temp);
+                Files.move(temp.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp.toPath());
+            }
+        }
+        Files.createLink(dest.toPath(), copy.toPath());
+        return true;
+    }
+}
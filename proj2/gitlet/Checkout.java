@@ -0,0 +1,293 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Incremental checkout: moves the working directory from the files of
+ *  one commit to those of another by touching only the paths whose blobs
+ *  differ between the two.  The difference comes from the commits'
+ *  trees, so directories that are the same on both sides are never read,
+ *  and no blob is read for a path that does not change.  A changed file
+ *  that the stat cache shows already holds its new contents is left
+ *  alone as well.  Switching between branches that differ in 3 files of
+ *  10,000 writes 3 files.
+ *
+ *  Deletions are made first.  The files to write are then written by a
+ *  pool of "checkout.threads" threads (a {@link Config} setting), so
+ *  that reading and inflating one blob overlaps writing others.  If any
+ *  write fails, the writes not yet started are abandoned, and once the
+ *  others have finished a single error reports the failures.  Blobs
+ *  stored raw are copied by FileChannel.transferTo, without passing
+ *  through user space; with "checkout.hardlinks" on, files are made
+ *  links to shared copies instead (see {@link BlobLinks}).
+ *
+ *  The checkout of a branch and reset both switch files this way, and
+ *  the checkout of a single file writes it as a switch would.  With
+ *  the "checkout.verbose" setting on, they report how many files were
+ *  written and how fast.
+ *
+ *  @author Alec Luk
+ */
+class Checkout {
+
+    /** The setting giving the number of threads writing files. */
+    static final String THREADS_KEY = "checkout.threads";
+    /** Number of threads writing files when THREADS_KEY is not set. */
+    static final int DEFAULT_THREADS = 8;
+    /** The setting asking for a report of the files written. */
+    static final String VERBOSE_KEY = "checkout.verbose";
+
+    /** Checks out the files at the head of BRANCH, and makes it the
+     *  current branch, with nothing staged. */
+    static void checkoutBranch(String branch) {
+        RefStore refs = RefStore.current();
+        Repository repo = refs.load();
+        String id = Journal.map(repo, Journal.HEAD).get(branch);
+        if (id == null) {
+            throw error("No such branch exists.");
+        } else if (branch.equals(Journal.currentBranch(repo))) {
+            throw error("No need to checkout the current branch.");
+        }
+        switchFiles(Staging.headCommit(repo), commitOf(id));
+        Journal.setCurrentBranch(repo, branch);
+        clearStage(repo);
+        refs.save(repo);
+    }
+
+    /** Checks out the files of commit ID, which may be abbreviated, and
+     *  makes it the head of the current branch, with nothing staged. */
+    static void reset(String id) {
+        id = fullId(id);
+        Commit commit = commitOf(id);
+        RefStore refs = RefStore.current();
+        Repository repo = refs.load();
+        switchFiles(Staging.headCommit(repo), commit);
+        Journal.map(repo, Journal.HEAD).put(Journal.currentBranch(repo), id);
+        clearStage(repo);
+        refs.save(repo);
+    }
+
+    /** Writes the file NAME as it is in commit ID, or in the head commit
+     *  if ID is null, over the working file, which is left alone if the
+     *  stat cache shows it already holds those contents.  The file is
+     *  copied from its blob as a switch copies it, or linked to it. */
+    static void checkoutFile(String id, String name) {
+        Commit commit = id == null
+            ? Staging.headCommit(RefStore.current().load()) : commitOf(id);
+        String blobId = commit.getBlobs().get(name);
+        if (blobId == null) {
+            throw error("File does not exist in that commit.");
+        }
+        StatIndex index = StatIndex.load();
+        try {
+            if (!index.isUnchanged(name, join(CWD, name), ObjectId.fromHex(blobId))) {
+                writeFile(name, ObjectId.fromHex(blobId), BlobLinks.enabled(), index);
+            }
+        } finally {
+            index.save();
+        }
+    }
+
+    /** Returns the commit ID, which may be abbreviated.  Throws a
+     *  GitletException if there is no such commit. */
+    private static Commit commitOf(String id) {
+        return readObject(ObjectPaths.of(COMMITS_DIR, fullId(id)), Commit.class);
+    }
+
+    /** Returns the full id of the commit ID, which may be abbreviated to
+     *  a unique prefix that is looked up in the {@link IdIndex}.  Throws a
+     *  GitletException if there is no such commit, or if the prefix is
+     *  ambiguous. */
+    private static String fullId(String id) {
+        if (ObjectPaths.isId(id) && objectExists(ObjectPaths.of(COMMITS_DIR, id))) {
+            return id;
+        }
+        id = IdIndex.load().resolve(id);
+        if (!objectExists(ObjectPaths.of(COMMITS_DIR, id))) {
+            throw error("No commit with that id exists.");
+        }
+        return id;
+    }
+
+    /** Unstages every file staged in REPO. */
+    private static void clearStage(Repository repo) {
+        Journal.map(repo, Journal.ADDITION).clear();
+        Journal.map(repo, Journal.REMOVAL).clear();
+    }
+
+    /** Changes the working directory from the files of commit FROM to
+     *  those of commit TO.  Before anything is changed, throws a
+     *  GitletException if a file untracked in FROM would be overwritten.
+     *  Reports the files written if VERBOSE_KEY is set. */
+    static void switchFiles(Commit from, Commit to) {
+        switchFiles(from, to, Config.getBoolean(VERBOSE_KEY, false));
+    }
+
+    /** Changes the working directory from the files of commit FROM to
+     *  those of commit TO, as for switchFiles(FROM, TO).  If VERBOSE,
+     *  reports the number of files written and the rate. */
+    static void switchFiles(Commit from, Commit to, boolean verbose) {
+        long start = System.nanoTime();
+        TreeMap<String, ObjectId[]> changes = diff(from, to);
+        checkUntracked(changes);
+        StatIndex index = StatIndex.load();
+        try {
+            List<Map.Entry<String, ObjectId>> writes = new ArrayList<>();
+            for (Map.Entry<String, ObjectId[]> change : changes.entrySet()) {
+                String path = change.getKey();
+                ObjectId blobId = change.getValue()[1];
+                File file = join(CWD, path);
+                if (blobId == null) {
+                    restrictedDelete(file);
+                    index.remove(path);
+                } else if (!index.isUnchanged(path, file, blobId)) {
+                    writes.add(Map.entry(path, blobId));
+                }
+            }
+            long bytes = write(writes, index);
+            if (verbose) {
+                double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+                double megabytes = bytes / (double) (1 << 20);
+                message("Wrote %d files (%.1f MB) in %.3f s: %.0f files/s, %.1f MB/s.",
+                        writes.size(), megabytes, seconds, writes.size() / seconds,
+                        megabytes / seconds);
+            }
+        } finally {
+            index.save();
+        }
+    }
+
+    /** Writes each path in WRITES with the contents of the blob it is
+     *  paired with, recording the results in INDEX, and returns the
+     *  number of bytes written. */
+    private static long write(List<Map.Entry<String, ObjectId>> writes, StatIndex index) {
+        int threads = Config.getInt(THREADS_KEY, DEFAULT_THREADS);
+        if (threads < 1) {
+            throw error("Bad value for %s in config: %d", THREADS_KEY, threads);
+        }
+        threads = Math.min(threads, writes.size());
+        boolean linking = BlobLinks.enabled();
+        ExecutorService pool = threads <= 1 ? null : Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "gitlet-checkout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Executor executor = pool == null ? Runnable::run : pool;
+        AtomicBoolean abandoned = new AtomicBoolean();
+        try {
+            List<CompletableFuture<Long>> results = new ArrayList<>();
+            for (Map.Entry<String, ObjectId> entry : writes) {
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    if (abandoned.get()) {
+                        return -1L;
+                    }
+                    try {
+                        return writeFile(entry.getKey(), entry.getValue(), linking, index);
+                    } catch (RuntimeException excp) {
+                        abandoned.set(true);
+                        throw excp;
+                    }
+                }, executor));
+            }
+            long bytes = 0;
+            int written = 0;
+            List<String> failed = new ArrayList<>();
+            String reason = null;
+            for (int i = 0; i < results.size(); i += 1) {
+                try {
+                    long size = results.get(i).join();
+                    if (size >= 0) {
+                        bytes += size;
+                        written += 1;
+                    }
+                } catch (CompletionException excp) {
+                    failed.add(writes.get(i).getKey());
+                    reason = reason != null ? reason : excp.getCause().getMessage();
+                }
+            }
+            if (!failed.isEmpty()) {
+                throw new IllegalArgumentException(String.format(
+                    "could not write %s%s (%s); %d of %d files were written",
+                    failed.get(0), failed.size() == 1 ? "" : " and " + (failed.size() - 1)
+                    + " other files", reason, written, writes.size()));
+            }
+            return bytes;
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /** Writes the contents of blob BLOBID to the file at PATH, by hard
+     *  link if LINKING, records it in INDEX, and returns its size.  The
+     *  old file is removed first rather than overwritten, since it may be
+     *  a link to a blob copy. */
+    private static long writeFile(String path, ObjectId blobId, boolean linking,
+                                  StatIndex index) {
+        File file = join(CWD, path);
+        file.getParentFile().mkdirs();
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (linking) {
+            BlobLinks.link(blobId.toString(), file);
+        } else {
+            copyBlob(ObjectPaths.of(BLOBS_DIR, blobId.toString()), file);
+        }
+        index.update(path, file, blobId);
+        return file.length();
+    }
+
+    /** Returns the paths whose blob differs between commits FROM and TO,
+     *  each mapped to the pair {blob in FROM, blob in TO}, with null for
+     *  a missing file. */
+    static TreeMap<String, ObjectId[]> diff(Commit from, Commit to) {
+        if (from.getTreeId() != null && to.getTreeId() != null) {
+            return Tree.diff(from.getTreeId(), to.getTreeId());
+        }
+        /* A commit from before trees: compare the file tables. */
+        Map<String, String> a = from.getBlobs();
+        Map<String, String> b = to.getBlobs();
+        TreeSet<String> paths = new TreeSet<>(a.keySet());
+        paths.addAll(b.keySet());
+        TreeMap<String, ObjectId[]> result = new TreeMap<>();
+        for (String path : paths) {
+            String blobA = a.get(path);
+            String blobB = b.get(path);
+            if (blobA == null || !blobA.equals(blobB)) {
+                result.put(path, new ObjectId[] {ObjectId.fromHexOrNull(blobA),
+                                                 ObjectId.fromHexOrNull(blobB)});
+            }
+        }
+        return result;
+    }
+
+    /** Throws a GitletException if one of CHANGES would write over a file
+     *  that exists but was not tracked. */
+    static void checkUntracked(Map<String, ObjectId[]> changes) {
+        for (Map.Entry<String, ObjectId[]> change : changes.entrySet()) {
+            if (change.getValue()[0] == null && join(CWD, change.getKey()).exists()) {
+                throw error("There is an untracked file in the way;"
+                            + " delete it, or add and commit it first.");
+            }
+        }
+    }
+}
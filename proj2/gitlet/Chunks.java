@@ -0,0 +1,229 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Blobs stored as lists of content-defined chunks.
+ *
+ *  Large files are cut into chunks where a rolling "gear" hash of the
+ *  last bytes seen has its top CUT_BITS bits clear, so a cut depends only
+ *  on nearby content: an edit moves the cuts around it and leaves the
+ *  chunks elsewhere as they were.  Each chunk is stored once, under the
+ *  SHA-1 of its contents, in CHUNKS_DIR, however many blobs and files it
+ *  turns up in.  The blob itself, still named by the SHA-1 of its whole
+ *  contents, holds the magic "GCHK", a version byte, the total length as
+ *  a long, the number of chunks, and the 20-byte id and int length of
+ *  each chunk in order.
+ *
+ *  Chunking is off unless the "chunk.threshold" setting of
+ *  {@link Config} is positive; blobs of at least that many bytes are then
+ *  chunked, and smaller ones stored as before.
+ *
+ *  @author Alec Luk
+ */
+class Chunks {
+
+    /** The directory holding the chunks. */
+    static final File CHUNKS_DIR = join(GITLET_DIR, "chunks");
+    /** Magic number at the start of a chunked blob. */
+    private static final int MAGIC = 0x4743484b;
+    /** Version of the chunked blob format. */
+    private static final int VERSION = 1;
+    /** The setting giving the smallest blob that is chunked. */
+    static final String THRESHOLD_KEY = "chunk.threshold";
+    /** Smallest chunk, except for the last one of a blob. */
+    private static final int MIN_CHUNK = 16 << 10;
+    /** Largest chunk. */
+    private static final int MAX_CHUNK = 256 << 10;
+    /** Number of top hash bits that must be clear at a cut, giving an
+     *  average chunk of about MIN_CHUNK + 2 ** CUT_BITS bytes. */
+    private static final int CUT_BITS = 16;
+    /** Mask of the hash bits tested for a cut. */
+    private static final long CUT_MASK = -1L << (Long.SIZE - CUT_BITS);
+    /** Random values mixed into the hash for each byte value.  The seed
+     *  is fixed: cuts must fall in the same places in every run. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Returns true iff a blob of LENGTH bytes is to be chunked. */
+    static boolean wanted(long length) {
+        int threshold = Config.getInt(THRESHOLD_KEY, 0);
+        return threshold > 0 && length >= threshold;
+    }
+
+    /** Writes the blob file BLOB holding CONTENTS as a list of chunks. */
+    static void write(File blob, byte[] contents) {
+        write(blob, new ByteArrayInputStream(contents));
+    }
+
+    /** Writes the blob file BLOB holding the contents read from SOURCE,
+     *  which is closed afterwards, as a list of chunks.  SOURCE is read a
+     *  chunk at a time. */
+    static void write(File blob, InputStream source) {
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(table);
+        long total = 0;
+        int count = 0;
+        try (InputStream in = new BufferedInputStream(source)) {
+            CHUNKS_DIR.mkdir();
+            byte[] chunk = new byte[MAX_CHUNK];
+            for (int size = next(in, chunk); size > 0; size = next(in, chunk)) {
+                byte[] contents = Arrays.copyOf(chunk, size);
+                String id = sha1(contents);
+                File file = ObjectPaths.of(CHUNKS_DIR, id);
+                if (!objectExists(file)) {
+                    writeObjectContents(file, contents);
+                }
+                out.write(fromHex(id));
+                out.writeInt(size);
+                total += size;
+                count += 1;
+            }
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream head = new DataOutputStream(header);
+            head.writeInt(MAGIC);
+            head.writeByte(VERSION);
+            head.writeLong(total);
+            head.writeInt(count);
+            table.writeTo(head);
+            writeObjectContents(blob, header.toByteArray());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads the next chunk of IN into BUF and returns its size, or 0 at
+     *  the end of IN. */
+    private static int next(InputStream in, byte[] buf) throws IOException {
+        int size = in.readNBytes(buf, 0, MIN_CHUNK);
+        if (size < MIN_CHUNK) {
+            return size;
+        }
+        long hash = 0;
+        for (int b = in.read(); b >= 0; b = in.read()) {
+            buf[size] = (byte) b;
+            size += 1;
+            hash = (hash << 1) + GEAR[b];
+            if ((hash & CUT_MASK) == 0 || size == MAX_CHUNK) {
+                break;
+            }
+        }
+        return size;
+    }
+
+    /** Returns true iff the stream IN, which must support marks, is at
+     *  the start of a chunked blob. */
+    static boolean isChunked(InputStream in) throws IOException {
+        return hasMagic(in, MAGIC);
+    }
+
+    /** Returns true iff the stored object BLOB is a chunked blob. */
+    static boolean isChunked(File blob) {
+        try (InputStream in = openObject(blob)) {
+            return isChunked(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the ids of the chunks of the stored blob BLOB, in order,
+     *  or an empty list if it is not chunked. */
+    static List<ObjectId> chunksOf(File blob) {
+        List<ObjectId> result = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(openObject(blob)))) {
+            if (!isChunked(in)) {
+                return result;
+            }
+            in.skipBytes(4 + 1 + 8);
+            int count = in.readInt();
+            for (int i = 0; i < count; i += 1) {
+                result.add(ObjectId.read(in));
+                in.readInt();
+            }
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the chunked blob read from IN. */
+    static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        copy(new DataInputStream(in), Channels.newChannel(result));
+        return result.toByteArray();
+    }
+
+    /** Writes the contents of the chunked blob BLOB to DEST, creating or
+     *  overwriting it, a chunk at a time.  Chunks stored raw are copied
+     *  from file to file by the kernel. */
+    static void copy(File blob, File dest) {
+        try (DataInputStream in = new DataInputStream(openObject(blob));
+             FileChannel out = FileChannel.open(dest.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            copy(in, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of the chunked blob read from IN to OUT. */
+    private static void copy(DataInputStream in, WritableByteChannel out) throws IOException {
+        if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+            throw new IOException("not a chunked blob");
+        }
+        long total = in.readLong();
+        int count = in.readInt();
+        byte[] id = new byte[UID_LENGTH / 2];
+        long written = 0;
+        for (int i = 0; i < count; i += 1) {
+            in.readFully(id);
+            int size = in.readInt();
+            File file = ObjectPaths.of(CHUNKS_DIR, toHex(id));
+            File loose = looseObject(file);
+            long copied = 0;
+            if (loose != null && !Compression.isCompressed(loose)) {
+                try (FileChannel chunk = FileChannel.open(loose.toPath())) {
+                    for (long n = -1; copied < chunk.size() && n != 0; copied += n) {
+                        n = chunk.transferTo(copied, chunk.size() - copied, out);
+                    }
+                }
+            } else {
+                try (InputStream chunk = openObject(file)) {
+                    copied = chunk.transferTo(Channels.newOutputStream(out));
+                }
+            }
+            if (copied != size) {
+                throw new IOException("chunk " + toHex(id) + " has the wrong length");
+            }
+            written += size;
+        }
+        if (written != total) {
+            throw new IOException("chunked blob has the wrong length");
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.io.File;
 import static gitlet.Repository.*;
 import static gitlet.Utils.*;
 import java.io.*;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
@@ -13,6 +14,10 @@ import java.util.HashMap;
 /** Represents a gitlet commit object.
  *  does at a high level.
  *
+ *  A commit is stored in a compact binary encoding (see {@link #encode()})
+ *  rather than with Java serialization.  Commits written by older versions
+ *  of gitlet with Java serialization can still be read.
+ *
  *  @author Alec Luk
  */
 public class Commit implements Serializable {
@@ -25,46 +30,82 @@ public class Commit implements Serializable {
 
     /** The message of this Commit. */
     private String message;
-    /** The timestamp of this commit. */
-    private String timeStamp;
+    /** The time of this commit, in milliseconds since the epoch. */
+    private long time;
     /** the first parent reference of the commit */
-    private String parent1;
+    private ObjectId parent1;
     /** the second parent reference of the commit */
-    private String parent2;
-    /** a mapping of file names to blob references */
+    private ObjectId parent2;
+    /** a mapping of file names to blob references, read from the tree
+     *  on first use when this commit was decoded */
     private HashMap<String, String> blobs;
+    /** the tree holding the file table of a decoded commit, or of this
+     *  commit once it has been encoded */
+    private ObjectId treeId;
+    /** a copy of the file table treeId was written for, or null if
+     *  treeId was not written by this commit */
+    private HashMap<String, String> treeFiles;
     /** commit's corresponding branch name. */
     private String branchName;
 
+    /** Serial version of the Java-serialized commits of older gitlets. */
+    private static final long serialVersionUID = 8974613798077024540L;
+    /** The fields of the Java-serialized commits of older gitlets. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("message", String.class),
+        new ObjectStreamField("timeStamp", String.class),
+        new ObjectStreamField("parent1", String.class),
+        new ObjectStreamField("parent2", String.class),
+        new ObjectStreamField("blobs", HashMap.class),
+        new ObjectStreamField("branchName", String.class),
+    };
+
+    /** The format in which timestamps are displayed. */
+    private static final String DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy -0800";
+    /** Magic number at the start of an encoded commit.  It can never be
+     *  confused with Java serialization, which starts with 0xACED. */
+    private static final int MAGIC = 0x47434d54;
+    /** Version of the encoding that kept the file table inline. */
+    private static final int TABLE_VERSION = 1;
+    /** Version of the encoding written by {@link #encode()}. */
+    private static final int VERSION = 2;
+
     /** make a commit for add in repository */
     public Commit(String message, String parent1, String parent2, String branchName) {
         this.message = message;
-        this.timeStamp = setTimeStamp();
-        this.parent1 = parent1;
-        this.parent2 = parent2;
-        this.blobs = readFilesFromParent1();  
+        this.time = this.message.equals("initial commit") ? 0 : System.currentTimeMillis();
+        this.parent1 = ObjectId.fromHexOrNull(parent1);
+        this.parent2 = ObjectId.fromHexOrNull(parent2);
+        this.blobs = readFilesFromParent1();
         this.branchName = branchName;
     }
 
-    public String setTimeStamp() {
-        if (this.message.equals("initial commit")) {
-            return new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy -0800").format(new Date(0));
-        }
-        return new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy -0800").format(new Date());
+    /** A commit read back from its encoding, whose file table is either
+     *  BLOBS or stored in tree TREEID. */
+    private Commit(String message, long time, ObjectId parent1, ObjectId parent2,
+                   HashMap<String, String> blobs, ObjectId treeId, String branchName) {
+        this.message = message;
+        this.time = time;
+        this.parent1 = parent1;
+        this.parent2 = parent2;
+        this.blobs = blobs;
+        this.treeId = treeId;
+        this.branchName = branchName;
     }
 
-    public HashMap<String, String> readFilesFromParent1() {  
+    public HashMap<String, String> readFilesFromParent1() {
         if (this.message.equals("initial commit")) {
             return new HashMap<String, String>();
         } else {
-            File parentCommitFile = join(COMMITS_DIR, parent1); 
-            Commit parentCommit = readObject(parentCommitFile, Commit.class);
-            return parentCommit.blobs; /** return the blobs HashMap of the parent. */
+            File parentCommitFile = ObjectPaths.of(COMMITS_DIR, parent1.toString());
+            Commit parentCommit = Utils.readObject(parentCommitFile, Commit.class);
+            /* A copy: the parent may be shared through the commit cache. */
+            return new HashMap<>(parentCommit.getBlobs());
         }
     }
 
     public HashMap<String, String> readFilesFromParent2() {
-        return this.blobs;
+        return getBlobs();
     }
 
     public String getMessage() {
@@ -72,23 +113,171 @@ public class Commit implements Serializable {
     }
 
     public String gettimeStamp() {
-        return this.timeStamp;
+        return new SimpleDateFormat(DATE_FORMAT).format(new Date(this.time));
+    }
+
+    public long getTime() {
+        return this.time;
     }
 
     public String getParent1() {
-        return this.parent1;
+        return this.parent1 == null ? null : this.parent1.toString();
     }
 
     public String getParent2() {
-        return this.parent2;
+        return this.parent2 == null ? null : this.parent2.toString();
     }
 
-    public HashMap<String, String> getBlobs() {
+    public synchronized HashMap<String, String> getBlobs() {
+        if (this.blobs == null) {
+            this.blobs = Tree.read(this.treeId);
+        }
         return this.blobs;
     }
 
+    /** Returns the number of files in this commit's file table if it
+     *  has been loaded, and 0 otherwise. */
+    synchronized int loadedFiles() {
+        return this.blobs == null ? 0 : this.blobs.size();
+    }
+
+    /** Returns the id of this commit's tree, or null if its files are held
+     *  inline, as in commits written before trees. */
+    ObjectId getTreeId() {
+        return this.treeId;
+    }
+
     public String getbranchName() {
         return this.branchName;
     }
 
+    /** Records this commit, which has been stored under ID, in the side
+     *  indexes kept next to the commit objects. */
+    void indexAs(String id) {
+        CommitGraph.append(id, this);
+        IdIndex.add(id);
+        MessageIndex.add(id, message);
+    }
+
+    /** Returns this commit in its compact binary encoding: the magic
+     *  number and version, the time as epoch milliseconds, the number of
+     *  parents followed by each parent id as 20 raw bytes, the message
+     *  and branch name, and then the raw 20-byte id of the tree holding
+     *  the file table.  Strings are UTF-8 with an int length prefix.
+     *  The trees are stored as a side effect, if not already present
+     *  (see writeTree).
+     *  (Version 1 wrote the file table inline instead of the tree id; it
+     *  can still be decoded.) */
+    public byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(time);
+            out.writeByte(parent1 == null ? 0 : parent2 == null ? 1 : 2);
+            if (parent1 != null) {
+                parent1.write(out);
+            }
+            if (parent2 != null) {
+                parent2.write(out);
+            }
+            writeString(out, message);
+            writeString(out, branchName == null ? "" : branchName);
+            writeTree().write(out);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw error("Internal error serializing commit.");
+        }
+    }
+
+    /** Returns the id of the tree holding this commit's file table.  The
+     *  trees are stored the first time, and again only if the file table
+     *  has changed since; a commit is encoded once for its id and again
+     *  to be written. */
+    private synchronized ObjectId writeTree() {
+        if (blobs != null && !blobs.equals(treeFiles)) {
+            treeId = Tree.write(blobs);
+            treeFiles = new HashMap<>(blobs);
+        }
+        return treeId;
+    }
+
+    /** Returns true iff IN, which must support marks, is positioned at
+     *  the start of an encoded commit.  Leaves IN where it was. */
+    static boolean isEncoded(InputStream in) throws IOException {
+        return hasMagic(in, MAGIC);
+    }
+
+    /** Returns the commit whose encoding is read from IN. */
+    static Commit decode(InputStream in) throws IOException {
+        return decode(in, true);
+    }
+
+    /** Returns the commit whose encoding is read from IN.  Unless FILES,
+     *  an inline file table is skipped, and the result must not be asked
+     *  for its blobs; this is enough for printing logs. */
+    static Commit decode(InputStream in, boolean files) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("not an encoded commit");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION && version != TABLE_VERSION) {
+            throw new IOException("unknown commit version " + version);
+        }
+        long time = data.readLong();
+        int parents = data.readUnsignedByte();
+        ObjectId parent1 = parents >= 1 ? ObjectId.read(data) : null;
+        ObjectId parent2 = parents >= 2 ? ObjectId.read(data) : null;
+        String message = readString(data);
+        String branchName = readString(data);
+        if (version == VERSION) {
+            return new Commit(message, time, parent1, parent2, null, ObjectId.read(data),
+                              branchName);
+        } else if (!files) {
+            return new Commit(message, time, parent1, parent2, null, null, branchName);
+        }
+        int size = data.readInt();
+        HashMap<String, String> blobs = new HashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i += 1) {
+            String name = readString(data);
+            blobs.put(name, ObjectId.read(data).toString());
+        }
+        return new Commit(message, time, parent1, parent2, blobs, null, branchName);
+    }
+
+    /** Reads a commit written with Java serialization by older gitlets,
+     *  whose timestamp was stored as a formatted string. */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.message = (String) fields.get("message", null);
+        this.parent1 = ObjectId.fromHexOrNull((String) fields.get("parent1", null));
+        this.parent2 = ObjectId.fromHexOrNull((String) fields.get("parent2", null));
+        @SuppressWarnings("unchecked")
+        HashMap<String, String> oldBlobs = (HashMap<String, String>) fields.get("blobs", null);
+        this.blobs = oldBlobs;
+        this.branchName = (String) fields.get("branchName", null);
+        try {
+            this.time = new SimpleDateFormat(DATE_FORMAT)
+                .parse((String) fields.get("timeStamp", null)).getTime();
+        } catch (ParseException excp) {
+            throw new InvalidObjectException(excp.getMessage());
+        }
+    }
+
+    /** Writes this commit in the Java serialization layout of older
+     *  gitlets. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("message", message);
+        fields.put("timeStamp", gettimeStamp());
+        fields.put("parent1", getParent1());
+        fields.put("parent2", getParent2());
+        fields.put("blobs", getBlobs());
+        fields.put("branchName", branchName);
+        out.writeFields();
+    }
+
 }
@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import static gitlet.Utils.*;
+
+/** A cache of decoded commits, shared by everything in this process that
+ *  reads commits through {@link Utils#readObject}.  Merge and log read
+ *  the same commits over and over, and a long-lived process such as the
+ *  daemon reads them again on every command.
+ *
+ *  Commits are immutable once written, and their ids name their
+ *  contents, so a cached commit can be handed to any caller for the same
+ *  id.  The cache holds the least recently used commits up to a total
+ *  weight, an estimate of the memory each commit takes, given by the
+ *  "commit.cache.size" setting of {@link Config} in bytes; a commit whose
+ *  file table has been loaded weighs more.  Hits, misses and evictions
+ *  are counted.
+ *
+ *  @author Alec Luk
+ */
+class CommitCache {
+
+    /** The setting giving the total weight of cached commits. */
+    static final String SIZE_KEY = "commit.cache.size";
+    /** Total weight of cached commits when SIZE_KEY is not set. */
+    static final int DEFAULT_SIZE = 8 << 20;
+
+    /** A cached commit and the weight it was counted at. */
+    private static class Entry {
+        /** The commit. */
+        private final Commit commit;
+        /** Its weight when last counted. */
+        private long weight;
+
+        /** An entry for COMMIT. */
+        Entry(Commit commit) {
+            this.commit = commit;
+            this.weight = weightOf(commit);
+        }
+    }
+
+    /** Cached commits by id, least recently used first. */
+    private static final LinkedHashMap<String, Entry> ENTRIES =
+        new LinkedHashMap<>(64, 0.75f, true);
+    /** Sum of the weights of ENTRIES. */
+    private static long totalWeight;
+    /** Number of reads answered from the cache. */
+    private static long hits;
+    /** Number of reads that had to decode a commit. */
+    private static long misses;
+    /** Number of commits dropped to make room. */
+    private static long evictions;
+
+    /** Returns the commit stored in FILE, whose name is its id. */
+    static Commit get(File file) {
+        String id = ObjectPaths.idOf(file);
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(id);
+            if (entry != null) {
+                hits += 1;
+                /* Its file table may have been loaded since it was counted. */
+                long weight = weightOf(entry.commit);
+                totalWeight += weight - entry.weight;
+                entry.weight = weight;
+                evict();
+                return entry.commit;
+            }
+            misses += 1;
+        }
+        Commit commit = readStoredObject(file, Commit.class);
+        synchronized (ENTRIES) {
+            Entry entry = new Entry(commit);
+            Entry old = ENTRIES.put(id, entry);
+            totalWeight += entry.weight - (old == null ? 0 : old.weight);
+            evict();
+        }
+        return commit;
+    }
+
+    /** Drops every cached commit. */
+    static void clear() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+            totalWeight = 0;
+        }
+    }
+
+    /** Returns a one-line summary of the cache's use. */
+    static String stats() {
+        synchronized (ENTRIES) {
+            return String.format("commit cache: %d hits, %d misses, %d evictions,"
+                                 + " %d commits, %d bytes",
+                                 hits, misses, evictions, ENTRIES.size(), totalWeight);
+        }
+    }
+
+    /** Returns the number of reads answered from the cache. */
+    static long hits() {
+        synchronized (ENTRIES) {
+            return hits;
+        }
+    }
+
+    /** Returns the number of reads that had to decode a commit. */
+    static long misses() {
+        synchronized (ENTRIES) {
+            return misses;
+        }
+    }
+
+    /** Drops least recently used commits until the total weight is within
+     *  the configured size.  The caller holds the lock on ENTRIES. */
+    private static void evict() {
+        long limit = Config.getInt(SIZE_KEY, DEFAULT_SIZE);
+        Iterator<Entry> eldest = ENTRIES.values().iterator();
+        while (totalWeight > limit && eldest.hasNext()) {
+            totalWeight -= eldest.next().weight;
+            eldest.remove();
+            evictions += 1;
+        }
+    }
+
+    /** Returns the estimated size of COMMIT in memory, in bytes. */
+    private static long weightOf(Commit commit) {
+        return 160 + 2L * commit.getMessage().length() + 160L * commit.loadedFiles();
+    }
+}
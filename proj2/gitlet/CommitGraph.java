@@ -0,0 +1,320 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The commit graph: a side file holding, for every commit, its parents,
+ *  generation number and time in fixed-width records, so that merge
+ *  bases and ancestry can be computed without reading commit objects.
+ *
+ *  The file starts with the magic "GGRF" and a version int, followed by
+ *  one RECORD_SIZE-byte record per commit: the 20-byte commit id, the
+ *  record numbers of its first and second parents (-1 if absent), its
+ *  generation number and its time in epoch milliseconds.  A commit's
+ *  parents always come before it, so records are only ever appended.
+ *  The generation of a root commit is 1; any other commit's generation
+ *  is one more than the largest generation of its parents.
+ *
+ *  @author Alec Luk
+ */
+class CommitGraph {
+
+    /** The file holding the commit graph. */
+    static final File GRAPH_FILE = join(GITLET_DIR, "commit-graph");
+    /** Magic number at the start of the file. */
+    private static final int MAGIC = 0x47475246;
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+    /** Size of the file header. */
+    private static final int HEADER = 8;
+    /** Number of raw bytes in a commit id. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+    /** Size of one record. */
+    private static final int RECORD_SIZE = ID_BYTES + 4 + 4 + 4 + 8;
+
+    /** Contents of the graph file. */
+    private final ByteBuffer records;
+    /** Number of records. */
+    private final int count;
+    /** Record number of each commit id, built on first use. */
+    private HashMap<ObjectId, Integer> positions;
+
+    /** A graph over the records in BUF. */
+    private CommitGraph(ByteBuffer buf) {
+        this.records = buf;
+        this.count = (buf.limit() - HEADER) / RECORD_SIZE;
+    }
+
+    /** Returns the commit graph of the current repository, building it
+     *  from the commit objects if it does not exist yet. */
+    static CommitGraph load() {
+        if (!GRAPH_FILE.isFile()) {
+            rebuild();
+        }
+        try (FileChannel ch = FileChannel.open(GRAPH_FILE.toPath())) {
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.limit() < HEADER || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                throw error("Corrupt commit graph.");
+            }
+            return new CommitGraph(buf);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Records COMMIT, whose id is ID, in the graph file.  Rebuilds the
+     *  whole file instead if a parent of COMMIT is not in it, as happens
+     *  for repositories created before the commit graph existed. */
+    static void append(String id, Commit commit) {
+        if (!GRAPH_FILE.isFile()) {
+            if (commit.getParent1() != null) {
+                rebuild();
+                return;
+            }
+            writeContents(GRAPH_FILE, header());
+        }
+        CommitGraph graph = load();
+        ObjectId self = ObjectId.fromHex(id);
+        ObjectId parent1 = ObjectId.fromHexOrNull(commit.getParent1());
+        ObjectId parent2 = ObjectId.fromHexOrNull(commit.getParent2());
+        int p1 = -1, p2 = -1;
+        /* A commit's record comes after those of its parents, so scanning
+         * back from the end finds the parents, and ID itself if it is
+         * already recorded, without touching anything older than the
+         * oldest parent.  For a new commit on a branch, that is just the
+         * last record; only a root commit reads them all. */
+        for (int k = graph.count - 1;
+             k >= 0 && (parent1 == null || p1 < 0 || (parent2 != null && p2 < 0));
+             k -= 1) {
+            ObjectId found = graph.objectIdAt(k);
+            if (found.equals(self)) {
+                return;
+            } else if (found.equals(parent1)) {
+                p1 = k;
+            } else if (found.equals(parent2)) {
+                p2 = k;
+            }
+        }
+        if ((parent1 != null && p1 < 0) || (parent2 != null && p2 < 0)) {
+            rebuild();
+            return;
+        }
+        int generation = 1 + Math.max(graph.generation(p1), graph.generation(p2));
+        ByteBuffer record = record(id, p1, p2, generation, commit.getTime());
+        try (FileChannel ch = FileChannel.open(GRAPH_FILE.toPath(),
+                                               StandardOpenOption.APPEND)) {
+            while (record.hasRemaining()) {
+                ch.write(record);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rewrites the graph file from all the commits in the repository. */
+    static void rebuild() {
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String id : plainFilenamesIn(COMMITS_DIR)) {
+            commits.put(id, readObject(ObjectPaths.of(COMMITS_DIR, id), Commit.class));
+        }
+        HashMap<String, Integer> numbers = new HashMap<>();
+        ArrayList<Integer> generations = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + commits.size() * RECORD_SIZE);
+        buf.put(header());
+        for (String start : commits.keySet()) {
+            /* Number each commit after its parents, without recursion. */
+            ArrayDeque<String> stack = new ArrayDeque<>();
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (numbers.containsKey(id)) {
+                    stack.pop();
+                    continue;
+                }
+                Commit commit = commits.get(id);
+                /* A parent that is not stored, as after a failed write,
+                 * is left out rather than followed. */
+                String parent1 = commits.containsKey(commit.getParent1())
+                    ? commit.getParent1() : null;
+                String parent2 = commits.containsKey(commit.getParent2())
+                    ? commit.getParent2() : null;
+                if (parent1 != null && !numbers.containsKey(parent1)) {
+                    stack.push(parent1);
+                } else if (parent2 != null && !numbers.containsKey(parent2)) {
+                    stack.push(parent2);
+                } else {
+                    stack.pop();
+                    int p1 = parent1 == null ? -1 : numbers.get(parent1);
+                    int p2 = parent2 == null ? -1 : numbers.get(parent2);
+                    int generation = 1 + Math.max(p1 < 0 ? 0 : generations.get(p1),
+                                                  p2 < 0 ? 0 : generations.get(p2));
+                    numbers.put(id, generations.size());
+                    generations.add(generation);
+                    buf.put(record(id, p1, p2, generation, commit.getTime()));
+                }
+            }
+        }
+        writeContents(GRAPH_FILE, buf.array());
+    }
+
+    /** Returns the file header. */
+    private static byte[] header() {
+        return ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).array();
+    }
+
+    /** Returns a record for commit ID with parent records P1 and P2,
+     *  GENERATION and TIME, ready to be written. */
+    private static ByteBuffer record(String id, int p1, int p2, int generation, long time) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        ObjectId.fromHex(id).put(record);
+        record.putInt(p1).putInt(p2).putInt(generation).putLong(time);
+        return record.flip();
+    }
+
+    /** Returns the record number of commit ID, or -1 if ID is null or
+     *  not in the graph. */
+    int indexOf(String id) {
+        if (id == null) {
+            return -1;
+        }
+        if (positions == null) {
+            positions = new HashMap<>(count * 4 / 3 + 1);
+            for (int k = 0; k < count; k += 1) {
+                positions.put(objectIdAt(k), k);
+            }
+        }
+        return positions.getOrDefault(ObjectId.fromHex(id), -1);
+    }
+
+    /** Returns the id of record K. */
+    String idAt(int k) {
+        return objectIdAt(k).toString();
+    }
+
+    /** Returns the id of record K as an ObjectId. */
+    private ObjectId objectIdAt(int k) {
+        return ObjectId.fromBuffer(records, HEADER + k * RECORD_SIZE);
+    }
+
+    /** Returns the record number of the first parent of record K, or -1. */
+    int parent1(int k) {
+        return records.getInt(HEADER + k * RECORD_SIZE + ID_BYTES);
+    }
+
+    /** Returns the record number of the second parent of record K, or -1. */
+    int parent2(int k) {
+        return records.getInt(HEADER + k * RECORD_SIZE + ID_BYTES + 4);
+    }
+
+    /** Returns the generation number of record K, or 0 if K is -1. */
+    int generation(int k) {
+        return k < 0 ? 0 : records.getInt(HEADER + k * RECORD_SIZE + ID_BYTES + 8);
+    }
+
+    /** Returns the time of record K. */
+    long time(int k) {
+        return records.getLong(HEADER + k * RECORD_SIZE + ID_BYTES + 12);
+    }
+
+    /** Returns the id of the split point of commits A and B: the common
+     *  ancestor with the largest generation number, ties going to the
+     *  most recent.  No common ancestor can descend from it. */
+    String mergeBase(String a, String b) {
+        int ka = checkedIndexOf(a);
+        int kb = checkedIndexOf(b);
+        byte[] flags = new byte[count];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            Comparator.comparingInt((Integer k) -> generation(k)).reversed()
+                .thenComparing(Comparator.comparingLong((Integer k) -> time(k)).reversed()));
+        flags[ka] |= 1;
+        flags[kb] |= 2;
+        queue.add(ka);
+        queue.add(kb);
+        /* Commits come off the queue only after all their descendants,
+         * so a commit's flags are final when it is taken. */
+        while (!queue.isEmpty()) {
+            int k = queue.poll();
+            if (flags[k] == 3) {
+                return idAt(k);
+            }
+            for (int p : new int[] {parent1(k), parent2(k)}) {
+                if (p >= 0 && (flags[p] | flags[k]) != flags[p]) {
+                    flags[p] |= flags[k];
+                    queue.add(p);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns true iff commit ANCESTOR is DESCENDANT or one of its
+     *  ancestors.  Never follows commits older in generation than
+     *  ANCESTOR. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int target = checkedIndexOf(ancestor);
+        int minGeneration = generation(target);
+        HashSet<Integer> seen = new HashSet<>();
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(checkedIndexOf(descendant));
+        while (!stack.isEmpty()) {
+            int k = stack.pop();
+            if (k == target) {
+                return true;
+            }
+            if (k < 0 || generation(k) <= minGeneration || !seen.add(k)) {
+                continue;
+            }
+            stack.push(parent1(k));
+            stack.push(parent2(k));
+        }
+        return false;
+    }
+
+    /** Returns true iff merging GIVEN into CURRENT is a fast-forward,
+     *  that is, CURRENT is an ancestor of GIVEN. */
+    boolean isFastForward(String current, String given) {
+        return isAncestor(current, given);
+    }
+
+    /** Returns the ids of all the ancestors of commit ID, including ID,
+     *  in depth-first order along first parents. */
+    List<String> ancestors(String id) {
+        ArrayList<String> result = new ArrayList<>();
+        boolean[] seen = new boolean[count];
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(checkedIndexOf(id));
+        while (!stack.isEmpty()) {
+            int k = stack.pop();
+            if (k < 0 || seen[k]) {
+                continue;
+            }
+            seen[k] = true;
+            result.add(idAt(k));
+            stack.push(parent2(k));
+            stack.push(parent1(k));
+        }
+        return result;
+    }
+
+    /** Returns the record number of ID, which must be in the graph. */
+    private int checkedIndexOf(String id) {
+        int k = indexOf(id);
+        if (k < 0) {
+            throw error("No commit with that id exists.");
+        }
+        return k;
+    }
+}
@@ -0,0 +1,202 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/** Deflate compression of loose objects.
+ *
+ *  A compressed object is the magic "GZLB", a version byte and the length
+ *  of the original contents as an int, followed by the contents in zlib
+ *  form.  Anything that does not start with the magic is an object
+ *  stored raw, as every object was before, so old repositories read as
+ *  they always did.  The level is the "compression.level" setting of
+ *  {@link Config}, from 0 (store raw) to 9, or -1 for zlib's default;
+ *  objects that do not shrink are stored raw.
+ *
+ *  Deflaters and inflaters hold native memory and are slow to set up, so
+ *  a few of each are kept in pools and reused.
+ *
+ *  @author Alec Luk
+ */
+class Compression {
+
+    /** Magic number at the start of a compressed object. */
+    private static final int MAGIC = 0x475a4c42;
+    /** Version of the compressed format. */
+    private static final int VERSION = 1;
+    /** Size of the header of a compressed object. */
+    private static final int HEADER_SIZE = 4 + 1 + 4;
+    /** The setting giving the compression level. */
+    static final String LEVEL_KEY = "compression.level";
+    /** Number of deflaters and of inflaters kept for reuse. */
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    /** Deflaters ready for use. */
+    private static final ArrayBlockingQueue<Deflater> DEFLATERS =
+        new ArrayBlockingQueue<>(POOL_SIZE);
+    /** Inflaters ready for use. */
+    private static final ArrayBlockingQueue<Inflater> INFLATERS =
+        new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /** Returns the configured compression level. */
+    static int level() {
+        int level = Config.getInt(LEVEL_KEY, Deflater.DEFAULT_COMPRESSION);
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw error("Bad value for %s in config: %d", LEVEL_KEY, level);
+        }
+        return level;
+    }
+
+    /** Returns CONTENTS in the form in which a loose object holding them
+     *  is stored: compressed at the configured level, or as they are.
+     *  Contents that themselves start with the magic are always wrapped,
+     *  so that they are not mistaken for a compressed object. */
+    static byte[] compress(byte[] contents) {
+        int level = level();
+        boolean ambiguous = contents.length >= 4 && ByteBuffer.wrap(contents).getInt() == MAGIC;
+        if (level == Deflater.NO_COMPRESSION && !ambiguous) {
+            return contents;
+        }
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater();
+        }
+        try {
+            deflater.setLevel(level);
+            deflater.setInput(contents);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(contents.length / 2 + 64);
+            out.writeBytes(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put((byte) VERSION)
+                           .putInt(contents.length).array());
+            byte[] buf = new byte[1 << 13];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+                if (out.size() >= contents.length && !ambiguous) {
+                    return contents;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.reset();
+            if (!DEFLATERS.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /** Returns a stream that writes what is written to it to OUT in
+     *  compressed form, at the configured level, as the stored form of an
+     *  object of LENGTH bytes.  The level must not be 0.  Finish the
+     *  result before committing OUT. */
+    static DeflaterOutputStream compressing(OutputStream out, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("object too large");
+        }
+        out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put((byte) VERSION)
+                  .putInt((int) length).array());
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater();
+        }
+        deflater.setLevel(level());
+        return new PooledDeflaterStream(out, deflater);
+    }
+
+    /** Returns true iff the loose object FILE is stored compressed. */
+    static boolean isCompressed(File file) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 4)) {
+            return hasMagic(in, MAGIC);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream over the contents of the object stored as IN,
+     *  decompressing them if need be.  The result supports marks. */
+    static InputStream open(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(HEADER_SIZE);
+        DataInputStream data = new DataInputStream(buffered);
+        byte[] header = data.readNBytes(HEADER_SIZE);
+        ByteBuffer fields = ByteBuffer.wrap(header);
+        if (header.length < HEADER_SIZE || fields.getInt() != MAGIC) {
+            buffered.reset();
+            return buffered;
+        }
+        if (fields.get() != VERSION) {
+            throw new IOException("unknown compressed object version");
+        }
+        Inflater inflater = INFLATERS.poll();
+        return new BufferedInputStream(new PooledInflaterStream(
+            buffered, inflater == null ? new Inflater() : inflater));
+    }
+
+    /** A stream deflating its output that returns its deflater to the
+     *  pool when closed. */
+    private static class PooledDeflaterStream extends DeflaterOutputStream {
+
+        /** True once this stream has been closed. */
+        private boolean closed;
+
+        /** A stream deflating onto OUT with DEFLATER. */
+        PooledDeflaterStream(OutputStream out, Deflater deflater) {
+            super(out, deflater, 1 << 13);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                def.reset();
+                if (!DEFLATERS.offer(def)) {
+                    def.end();
+                }
+            }
+        }
+    }
+
+    /** A stream inflating its input that returns its inflater to the pool
+     *  when closed. */
+    private static class PooledInflaterStream extends InflaterInputStream {
+
+        /** True once this stream has been closed. */
+        private boolean closed;
+
+        /** A stream inflating IN with INFLATER. */
+        PooledInflaterStream(InputStream in, Inflater inflater) {
+            super(in, inflater, 1 << 13);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            super.close();
+            inf.reset();
+            if (!INFLATERS.offer(inf)) {
+                inf.end();
+            }
+        }
+    }
+}
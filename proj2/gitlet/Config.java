@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Per-repository settings, kept in .gitlet/config as lines of the form
+ *  KEY=VALUE (the format of java.util.Properties).  A key that is not
+ *  set takes the default supplied by the code that reads it.  The file is
+ *  read again whenever it changes, so a long-lived process such as the
+ *  daemon sees edits to it.
+ *
+ *  @author Alec Luk
+ */
+class Config {
+
+    /** The file holding the settings. */
+    static final File CONFIG_FILE = join(GITLET_DIR, "config");
+
+    /** The settings last read from CONFIG_FILE. */
+    private static Properties settings = new Properties();
+    /** Modification time of CONFIG_FILE when SETTINGS were read, or -1. */
+    private static long settingsTime = -1;
+
+    /** Returns the setting KEY, or DEFAULTVALUE if it is not set. */
+    static synchronized String get(String key, String defaultValue) {
+        long time = CONFIG_FILE.lastModified();
+        if (time != settingsTime) {
+            Properties fresh = new Properties();
+            if (time != 0) {
+                try (InputStream in = new FileInputStream(CONFIG_FILE)) {
+                    fresh.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+            settings = fresh;
+            settingsTime = time;
+        }
+        return settings.getProperty(key, defaultValue).trim();
+    }
+
+    /** Returns the boolean setting KEY, or DEFAULTVALUE if it is not set.
+     *  Throws a GitletException if it is set to something else. */
+    static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key, Boolean.toString(defaultValue));
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        } else if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw error("Bad value for %s in config: %s", key, value);
+    }
+
+    /** Returns the integer setting KEY, or DEFAULTVALUE if it is not set.
+     *  Throws a GitletException if it is set to something else. */
+    static int getInt(String key, int defaultValue) {
+        String value = get(key, Integer.toString(defaultValue));
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException excp) {
+            throw error("Bad value for %s in config: %s", key, value);
+        }
+    }
+}
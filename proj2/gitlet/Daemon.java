@@ -0,0 +1,239 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Repository.*;
+
+/** An optional long-lived gitlet process that runs commands sent to it
+ *  over a Unix-domain socket, so that a scripted series of commands pays
+ *  for JVM startup and class loading once and finds the caches of the
+ *  previous commands still warm.
+ *
+ *  Usage: java gitlet.Daemon --serve   starts the daemon for the
+ *         initialized repository in the current directory;
+ *         java gitlet.Daemon --stop    stops it;
+ *         java gitlet.Daemon --stats   prints its cache statistics;
+ *         java gitlet.Daemon ARGS...   runs the gitlet command ARGS
+ *  through the daemon if one is serving the current directory, and
+ *  directly in this process otherwise.  Either way the output and the
+ *  exit code are exactly those of java gitlet.Main ARGS.
+ *
+ *  The daemon's socket lives in .gitlet, so --serve refuses to start
+ *  before init, and java gitlet.Daemon init always runs in the client's
+ *  own process.  Start the daemon after init.
+ *
+ *  A request is the client's working directory and the arguments, as a
+ *  count followed by UTF strings.  The reply is the command's standard
+ *  output in length-prefixed frames, then a frame of length -1 and the
+ *  exit code.  Each client is served on a thread of its own, through
+ *  {@link InProcess}, so the commands of several clients run at the same
+ *  time, as separate gitlet processes would; the {@link RepoLock}s and
+ *  the {@link Journal} of the repository keep them apart.  Stopping the
+ *  daemon lets the commands already running finish.
+ *
+ *  @author Alec Luk
+ */
+public class Daemon {
+
+    /** The socket of the daemon serving the current repository. */
+    static final File SOCKET_FILE = new File(GITLET_DIR, "daemon.sock");
+    /** Argument asking to start the daemon. */
+    private static final String SERVE = "--serve";
+    /** Argument asking a running daemon to stop. */
+    private static final String STOP = "--stop";
+    /** Argument asking a running daemon for its cache statistics. */
+    private static final String STATS = "--stats";
+    /** Frame length marking the end of a command's output. */
+    private static final int END = -1;
+
+    /** Runs the daemon, stops it, or runs a command, according to ARGS. */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 1 && args[0].equals(SERVE)) {
+            if (!InProcess.relaunch(Daemon.class, args)) {
+                serve();
+            }
+        } else if (args.length == 1 && args[0].equals(STOP)) {
+            if (SOCKET_FILE.exists()) {
+                System.exit(forward(args));
+            }
+        } else if (SOCKET_FILE.exists()) {
+            System.exit(forward(args));
+        } else if (args.length == 1 && args[0].equals(STATS)) {
+            System.out.println(CommitCache.stats());
+        } else {
+            Main.main(args);
+        }
+    }
+
+    /** Sends ARGS to the daemon, copies its output to the standard
+     *  output, and returns the command's exit code.  Runs the command in
+     *  this process instead if no daemon is listening. */
+    private static int forward(String[] args) throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET_FILE.toPath()));
+        } catch (IOException excp) {
+            /* A socket file left behind by a daemon that died. */
+            Files.deleteIfExists(SOCKET_FILE.toPath());
+            if (!args[0].equals(STOP)) {
+                Main.main(args);
+            }
+            return 0;
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeUTF(CWD.getAbsolutePath());
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel)));
+            byte[] buf = new byte[1 << 16];
+            while (true) {
+                int length = in.readInt();
+                if (length == END) {
+                    System.out.flush();
+                    return in.readInt();
+                }
+                if (length > buf.length) {
+                    buf = new byte[length];
+                }
+                in.readFully(buf, 0, length);
+                System.out.write(buf, 0, length);
+            }
+        }
+    }
+
+    /** Serves commands for the repository in the current directory until
+     *  asked to stop. */
+    private static void serve() throws IOException {
+        if (!GITLET_DIR.isDirectory()) {
+            Utils.message("Not in an initialized Gitlet directory.");
+            System.exit(0);
+        }
+        Files.deleteIfExists(SOCKET_FILE.toPath());
+        ExecutorService workers = Executors.newCachedThreadPool();
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET_FILE.toPath()));
+            SOCKET_FILE.deleteOnExit();
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (ClosedChannelException excp) {
+                    /* Closed by the client that asked us to stop. */
+                    break;
+                }
+                workers.execute(() -> serve(client, server));
+            }
+        } finally {
+            Files.deleteIfExists(SOCKET_FILE.toPath());
+            workers.shutdown();
+        }
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Serves CLIENT, closing SERVER if it asks the daemon to stop. */
+    private static void serve(SocketChannel client, ServerSocketChannel server) {
+        try (client) {
+            if (!handle(client)) {
+                server.close();
+            }
+        } catch (IOException excp) {
+            /* The client went away; the others are served regardless. */
+        }
+    }
+
+    /** Runs the command sent on CLIENT and sends back its output and exit
+     *  code.  Returns false iff the daemon was asked to stop. */
+    private static boolean handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Channels.newInputStream(client)));
+        String cwd = in.readUTF();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)));
+        if (args.length == 1 && args[0].equals(STOP)) {
+            out.writeInt(END);
+            out.writeInt(0);
+            out.flush();
+            return false;
+        }
+        int status;
+        PrintStream captured = new PrintStream(new FrameStream(out), false,
+                                               StandardCharsets.UTF_8);
+        if (args.length == 1 && args[0].equals(STATS)) {
+            captured.println(CommitCache.stats());
+            status = 0;
+        } else if (!new File(cwd).getAbsoluteFile().equals(CWD.getAbsoluteFile())) {
+            /* CWD is fixed when Repository is loaded, so the daemon can
+             * only serve the directory it was started in. */
+            captured.println("gitlet daemon serves " + CWD + ", not " + cwd);
+            status = 1;
+        } else {
+            status = InProcess.run(args, captured);
+        }
+        captured.flush();
+        out.writeInt(END);
+        out.writeInt(status);
+        out.flush();
+        return true;
+    }
+
+    /** An output stream sending what is written to it as frames. */
+    private static class FrameStream extends OutputStream {
+        /** Where frames go. */
+        private final DataOutputStream out;
+
+        /** A stream framing onto OUT. */
+        FrameStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
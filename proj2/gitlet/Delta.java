@@ -0,0 +1,414 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Blobs stored as deltas against other blobs.
+ *
+ *  A delta blob holds the magic "GDLT", a version byte, the 20-byte id of
+ *  its base blob, its chain depth (one more than the base's; a full blob
+ *  has depth 0), the length of the contents it stands for, and then a
+ *  series of instructions.  An instruction byte from 1 to MAX_INSERT is
+ *  followed by that many bytes to insert; the byte COPY is followed by an
+ *  offset and a length in the base, as 7-bit varints, to copy.
+ *
+ *  A new blob is tried against the few blobs written most recently, which
+ *  are usually earlier versions of the same file, and is stored as the
+ *  smallest delta found if that is under half the full size.  Chains are
+ *  kept to at most the depth given by the "delta.depth" setting of
+ *  {@link Config}, and never beyond MAX_DEPTH; 0 turns deltas off.
+ *  Blobs over MAX_SIZE are always stored whole.  Reconstructed bases
+ *  are kept in a small LRU cache, since the blobs of a chain share
+ *  them.  Contents are rebuilt into a file without holding them in
+ *  memory: copies from a loose full base go straight from file to file.
+ *
+ *  @author Alec Luk
+ */
+class Delta {
+
+    /** Magic number at the start of a delta blob. */
+    private static final int MAGIC = 0x47444c54;
+    /** Version of the delta format. */
+    private static final int VERSION = 1;
+    /** Number of raw bytes in a blob id. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+    /** The setting giving the maximum chain depth. */
+    static final String DEPTH_KEY = "delta.depth";
+    /** Maximum chain depth when DEPTH_KEY is not set. */
+    static final int DEFAULT_DEPTH = 10;
+    /** Largest depth a delta blob can record, in its one byte. */
+    static final int MAX_DEPTH = 0xff;
+    /** Instruction copying a range of the base. */
+    private static final int COPY = 0x80;
+    /** Longest single insert instruction. */
+    private static final int MAX_INSERT = 0x7f;
+    /** Size of the blocks of the base indexed for matching. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling block hash. */
+    private static final int PRIME = 1000003;
+    /** PRIME to the power BLOCK - 1, for removing a byte from a hash. */
+    private static final int PRIME_POWER;
+    /** Blobs smaller than this are always stored in full. */
+    private static final int MIN_SIZE = 64;
+    /** Blobs larger than this are always stored in full, so that no more
+     *  than this need be held in memory to look for a base. */
+    static final int MAX_SIZE = 16 << 20;
+    /** Number of recently written blobs tried as bases. */
+    private static final int WINDOW = 8;
+    /** The ids of the last WINDOW blobs written, newest first. */
+    static final File RECENT_FILE = join(GITLET_DIR, "recent-blobs");
+    /** Total size of the contents kept in CACHE, in bytes. */
+    private static final long CACHE_LIMIT = 32L << 20;
+
+    static {
+        int power = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            power *= PRIME;
+        }
+        PRIME_POWER = power;
+    }
+
+    /** Contents of blobs used as bases, by file, least recently used
+     *  first. */
+    private static final LinkedHashMap<String, byte[]> CACHE =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Total size of the values in CACHE. */
+    private static long cachedBytes;
+
+    /** Writes the blob file BLOB holding CONTENTS, as a delta if a good
+     *  base is found.  A blob that is already stored is left alone. */
+    static void write(File blob, byte[] contents) {
+        if (objectExists(blob)) {
+            return;
+        }
+        File dir = ObjectPaths.dirOf(blob);
+        int maxDepth = Math.min(Config.getInt(DEPTH_KEY, DEFAULT_DEPTH), MAX_DEPTH);
+        byte[] best = null;
+        if (maxDepth > 0 && contents.length >= MIN_SIZE && contents.length <= MAX_SIZE) {
+            for (String id : recent()) {
+                File base = ObjectPaths.of(dir, id);
+                if (!freshen(base)) {
+                    continue;
+                }
+                int depth = depthOf(base);
+                byte[] baseContents = depth < maxDepth ? contentsOf(base) : null;
+                if (baseContents == null || baseContents.length > 4L * contents.length
+                    || contents.length > 4L * baseContents.length) {
+                    continue;
+                }
+                byte[] delta = encode(id, depth + 1, baseContents, contents);
+                if (delta.length < contents.length / 2
+                    && (best == null || delta.length < best.length)) {
+                    best = delta;
+                }
+            }
+        }
+        writeObjectContents(blob, best != null ? best : serialize(contents));
+        remember(ObjectPaths.idOf(blob));
+    }
+
+    /** Returns true iff the stream IN, which must support marks, is at
+     *  the start of a delta. */
+    static boolean isDelta(InputStream in) throws IOException {
+        return hasMagic(in, MAGIC);
+    }
+
+    /** Returns the contents of the delta read from IN, whose base is in
+     *  the directory DIR. */
+    static byte[] read(InputStream in, File dir) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        apply(new DataInputStream(in), dir, Channels.newChannel(result));
+        return result.toByteArray();
+    }
+
+    /** Writes the contents of the delta blob BLOB to DEST, creating or
+     *  overwriting it. */
+    static void copy(File blob, File dest) {
+        try (InputStream in = new BufferedInputStream(openObject(blob));
+             FileChannel out = FileChannel.open(dest.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            apply(new DataInputStream(in), ObjectPaths.dirOf(blob), out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff the stored object BLOB is a delta. */
+    static boolean isDelta(File blob) {
+        try (InputStream in = new BufferedInputStream(openObject(blob), 4)) {
+            return isDelta(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the id of the base of the stored blob BLOB, or null if it
+     *  is not a delta. */
+    static ObjectId baseOf(File blob) {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(openObject(blob), 64))) {
+            if (!isDelta(in)) {
+                return null;
+            }
+            in.skipBytes(4 + 1);
+            return ObjectId.read(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the ids of the recently written blobs. */
+    private static List<String> recent() {
+        List<String> result = new ArrayList<>();
+        if (RECENT_FILE.isFile()) {
+            for (String id : readContentsAsString(RECENT_FILE).split("\n")) {
+                if (id.length() == UID_LENGTH) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Records blob ID as the most recently written.  The list is only
+     *  a hint, so if another command holds the INDEX {@link RepoLock}, it
+     *  is left as it is rather than waited for. */
+    private static void remember(String id) {
+        try (RepoLock lock = RepoLock.tryAcquire(RepoLock.INDEX)) {
+            if (lock == null) {
+                return;
+            }
+            List<String> ids = recent();
+            ids.remove(id);
+            ids.add(0, id);
+            if (ids.size() > WINDOW) {
+                ids = ids.subList(0, WINDOW);
+            }
+            writeContents(RECENT_FILE, String.join("\n", ids));
+        }
+    }
+
+    /** Returns true iff the stored blob BLOB exists, first renewing the
+     *  modification time of its loose file, if it has one.  A blob about
+     *  to become a delta base is then within the grace period of
+     *  {@link Gc}, which keeps it along with the bases of every loose
+     *  blob in that period. */
+    private static boolean freshen(File blob) {
+        File loose = looseObject(blob);
+        if (loose != null) {
+            return loose.setLastModified(System.currentTimeMillis());
+        }
+        return objectExists(blob);
+    }
+
+    /** Returns the chain depth of the stored blob BLOB. */
+    private static int depthOf(File blob) {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(openObject(blob), 64))) {
+            if (!isDelta(in)) {
+                return 0;
+            }
+            in.skipBytes(4 + 1 + ID_BYTES);
+            return in.readUnsignedByte();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of blob BLOB, from the cache if possible. */
+    private static byte[] contentsOf(File blob) {
+        String key = blob.getAbsolutePath();
+        synchronized (CACHE) {
+            byte[] hit = CACHE.get(key);
+            if (hit != null) {
+                return hit;
+            }
+        }
+        byte[] contents = readObject(blob, byte[].class);
+        synchronized (CACHE) {
+            if (contents.length <= CACHE_LIMIT / 4 && CACHE.put(key, contents) == null) {
+                cachedBytes += contents.length;
+                Iterator<byte[]> eldest = CACHE.values().iterator();
+                while (cachedBytes > CACHE_LIMIT) {
+                    cachedBytes -= eldest.next().length;
+                    eldest.remove();
+                }
+            }
+        }
+        return contents;
+    }
+
+    /** Writes to OUT the contents of the delta read from DATA, whose base
+     *  is in the directory DIR. */
+    private static void apply(DataInputStream data, File dir,
+                              WritableByteChannel out) throws IOException {
+        if (data.readInt() != MAGIC || data.readUnsignedByte() != VERSION) {
+            throw new IOException("not a delta");
+        }
+        byte[] id = new byte[ID_BYTES];
+        data.readFully(id);
+        data.readUnsignedByte();
+        long length = data.readInt();
+        File base = ObjectPaths.of(dir, toHex(id));
+        File loose = looseObject(base);
+        long start = loose == null ? -1 : blobDataStart(loose);
+        byte[] baseContents = start < 0 ? contentsOf(base) : null;
+        byte[] buf = new byte[MAX_INSERT];
+        long written = 0;
+        try (FileChannel baseChannel = start < 0 ? null : FileChannel.open(loose.toPath())) {
+            long baseLength = start < 0 ? baseContents.length : baseChannel.size() - start;
+            for (int op = data.read(); op >= 0; op = data.read()) {
+                if (op == COPY) {
+                    long offset = readVarint(data);
+                    long size = readVarint(data);
+                    if (offset + size > baseLength) {
+                        throw new IOException("delta copies past the end of its base");
+                    }
+                    if (baseChannel != null) {
+                        for (long done = 0; done < size; ) {
+                            done += baseChannel.transferTo(start + offset + done, size - done, out);
+                        }
+                    } else {
+                        writeFully(out, ByteBuffer.wrap(baseContents, (int) offset, (int) size));
+                    }
+                    written += size;
+                } else if (op > 0 && op <= MAX_INSERT) {
+                    data.readFully(buf, 0, op);
+                    writeFully(out, ByteBuffer.wrap(buf, 0, op));
+                    written += op;
+                } else {
+                    throw new IOException("bad delta instruction " + op);
+                }
+            }
+        }
+        if (written != length) {
+            throw new IOException("delta has the wrong length");
+        }
+    }
+
+    /** Returns the delta turning BASE, the contents of blob BASEID of
+     *  chain depth DEPTH - 1, into TARGET. */
+    static byte[] encode(String baseId, int depth, byte[] base, byte[] target) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(target.length / 4 + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.write(fromHex(baseId));
+            out.writeByte(Math.min(depth, MAX_DEPTH));
+            out.writeInt(target.length);
+            HashMap<Integer, Integer> blocks = new HashMap<>();
+            for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+                blocks.putIfAbsent(hash(base, i), i);
+            }
+            int n = target.length;
+            int pending = 0;
+            int i = 0;
+            int h = n >= BLOCK ? hash(target, 0) : 0;
+            while (i + BLOCK <= n) {
+                Integer at = blocks.get(h);
+                if (at == null || !Arrays.equals(base, at, at + BLOCK, target, i, i + BLOCK)) {
+                    if (i + BLOCK < n) {
+                        h = (h - (target[i] & 0xff) * PRIME_POWER) * PRIME
+                            + (target[i + BLOCK] & 0xff);
+                    }
+                    i += 1;
+                    continue;
+                }
+                /* Grow the match in both directions. */
+                int from = at;
+                int start = i;
+                while (start > pending && from > 0 && base[from - 1] == target[start - 1]) {
+                    start -= 1;
+                    from -= 1;
+                }
+                int end = i + BLOCK;
+                while (end < n && from + end - start < base.length
+                       && base[from + end - start] == target[end]) {
+                    end += 1;
+                }
+                insert(out, target, pending, start);
+                out.writeByte(COPY);
+                writeVarint(out, from);
+                writeVarint(out, end - start);
+                i = pending = end;
+                if (i + BLOCK <= n) {
+                    h = hash(target, i);
+                }
+            }
+            insert(out, target, pending, n);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Writes instructions inserting TARGET[START .. END) to OUT. */
+    private static void insert(DataOutputStream out, byte[] target, int start, int end)
+        throws IOException {
+        while (start < end) {
+            int size = Math.min(MAX_INSERT, end - start);
+            out.writeByte(size);
+            out.write(target, start, size);
+            start += size;
+        }
+    }
+
+    /** Returns the hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = h * PRIME + (data[i] & 0xff);
+        }
+        return h;
+    }
+
+    /** Writes the non-negative VALUE to OUT as a 7-bit varint. */
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while (value >= 0x80) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /** Returns the 7-bit varint read from IN. */
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        throw new IOException("bad varint in delta");
+    }
+
+    /** Writes all of BUF to OUT. */
+    private static void writeFully(WritableByteChannel out, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A class loader that loads the classes of package gitlet itself, with
+ *  every call to System.exit in them turned into a call to
+ *  InProcess.exit.  Main and Repository end commands with System.exit;
+ *  loaded this way, they can run commands in a JVM that goes on running
+ *  afterwards (see {@link InProcess}), with no security manager.
+ *
+ *  The daemon and batch mode restart themselves under this loader.
+ *  Other programs that run commands in-process, such as the unit tests,
+ *  make it the system class loader:
+ *      java -Djava.system.class.loader=gitlet.ExitTrap ...
+ *
+ *  Only the constant pool of a class changes: the class of each method
+ *  reference to System.exit(int) becomes gitlet.InProcess, which has a
+ *  method of the same name and type.  This class itself is left to the
+ *  parent loader.
+ *
+ *  @author Alec Luk
+ */
+public class ExitTrap extends ClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    /** Prefix of the names of the classes loaded here. */
+    private static final String PACKAGE = "gitlet.";
+    /** Internal name of the class whose exit method is replaced. */
+    private static final String SYSTEM = "java/lang/System";
+    /** Internal name of the class that replaces it. */
+    private static final String REPLACEMENT = "gitlet/InProcess";
+    /** Constant pool tags used below. */
+    private static final int UTF8 = 1, LONG = 5, DOUBLE = 6, CLASS = 7, METHODREF = 10;
+    /** Size of the entry after its tag, by tag, for all kinds but UTF8;
+     *  0 for tags that do not occur. */
+    private static final int[] ENTRY_SIZE = {
+        0, 0, 0, 4, 4, 8, 8, 2, 2, 4, 4, 4, 4, 0, 0, 3, 2, 4, 4, 2, 2
+    };
+
+    /** A loader of gitlet classes that finds them through PARENT, and
+     *  leaves every other class to it. */
+    public ExitTrap(ClassLoader parent) {
+        super(parent);
+    }
+
+    /** Returns true iff CLASS was loaded by an ExitTrap. */
+    public static boolean loaded(Class<?> cls) {
+        return cls.getClassLoader() instanceof ExitTrap;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve)
+        throws ClassNotFoundException {
+        if (!name.startsWith(PACKAGE) || name.equals(ExitTrap.class.getName())) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> result = findLoadedClass(name);
+            if (result == null) {
+                result = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(result);
+            }
+            return result;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String resource = name.replace('.', '/') + ".class";
+        try (InputStream in = getParent().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new ClassNotFoundException(name);
+            }
+            byte[] bytes = rewrite(in.readAllBytes());
+            return defineClass(name, bytes, 0, bytes.length);
+        } catch (IOException excp) {
+            throw new ClassNotFoundException(name, excp);
+        }
+    }
+
+    /** Returns the class file CLASSFILE with its method references to
+     *  System.exit pointing at InProcess instead. */
+    private static byte[] rewrite(byte[] classFile) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        in.skipBytes(8);
+        int count = in.readUnsignedShort();
+        int[] offsets = new int[count];
+        int[] tags = new int[count];
+        int[] first = new int[count];
+        int[] second = new int[count];
+        String[] strings = new String[count];
+        for (int i = 1; i < count; i += 1) {
+            offsets[i] = classFile.length - in.available();
+            tags[i] = in.readUnsignedByte();
+            int size = tags[i] < ENTRY_SIZE.length ? ENTRY_SIZE[tags[i]] : 0;
+            if (tags[i] == UTF8) {
+                strings[i] = in.readUTF();
+            } else if (size == 0) {
+                throw new IOException("unknown constant pool tag " + tags[i]);
+            } else if (size == 4 && tags[i] != LONG && tags[i] != DOUBLE) {
+                first[i] = in.readUnsignedShort();
+                second[i] = in.readUnsignedShort();
+            } else {
+                first[i] = in.readUnsignedShort();
+                in.skipBytes(size - 2);
+            }
+            if (tags[i] == LONG || tags[i] == DOUBLE) {
+                /* These take two entries. */
+                i += 1;
+            }
+        }
+        int end = classFile.length - in.available();
+        List<Integer> exits = new ArrayList<>();
+        for (int i = 1; i < count; i += 1) {
+            if (tags[i] == METHODREF && SYSTEM.equals(strings[first[first[i]]])
+                && "exit".equals(strings[first[second[i]]])
+                && "(I)V".equals(strings[second[second[i]]])) {
+                exits.add(i);
+            }
+        }
+        if (exits.isEmpty()) {
+            return classFile;
+        }
+        byte[] patched = classFile.clone();
+        for (int i : exits) {
+            patched[offsets[i] + 1] = (byte) (count + 1 >> 8);
+            patched[offsets[i] + 2] = (byte) (count + 1);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(classFile.length + 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(patched, 0, 8);
+        out.writeShort(count + 2);
+        out.write(patched, 10, end - 10);
+        out.writeByte(UTF8);
+        out.writeUTF(REPLACEMENT);
+        out.writeByte(CLASS);
+        out.writeShort(count);
+        out.write(patched, end, patched.length - end);
+        return bytes.toByteArray();
+    }
+}
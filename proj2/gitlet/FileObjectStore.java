@@ -0,0 +1,287 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static gitlet.Utils.*;
+
+/** The store of an object directory on disk: each object is a loose
+ *  file placed by {@link ObjectPaths}, or an entry in one of the
+ *  directory's packs (see {@link PackFile}).  New objects are always
+ *  written loose.  They are not forced to disk as they are written;
+ *  {@link #syncWritten} forces them all at once before anything that
+ *  refers to them is made durable.
+ *
+ *  Writing takes no lock, even with other processes writing to the same
+ *  repository.  Each object is written to a temporary file of its own
+ *  and then renamed into place atomically, so a reader sees either the
+ *  whole object or none of it.  Ids name contents, so two writers of the
+ *  same id write the same bytes, and whichever rename comes last wins
+ *  harmlessly.  A reader that misses an object looks at the packs
+ *  again in case another process has just folded it into one.
+ *
+ *  @author Alec Luk
+ */
+class FileObjectStore implements ObjectStore {
+
+    /** Suffix of the temporary files objects are written to. */
+    static final String TEMP_SUFFIX = ".tmp";
+
+    /** Loose objects written in this process and not yet forced to
+     *  disk, by any store. */
+    private static final Set<File> UNSYNCED = ConcurrentHashMap.newKeySet();
+
+    /** The id of this process, which makes its temporary file names
+     *  differ from other processes'. */
+    private static final long PID = ProcessHandle.current().pid();
+
+    /** The number of temporary files named so far in this process. */
+    private static final AtomicLong TEMP_COUNT = new AtomicLong();
+
+    /** The object directory. */
+    private final File dir;
+
+    /** The store of object directory DIR. */
+    FileObjectStore(File dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public boolean contains(String id) {
+        File file = ObjectPaths.of(dir, id);
+        return file.isFile() || PackFile.contains(file)
+            || PackFile.refresh(dir) && PackFile.contains(file);
+    }
+
+    @Override
+    public InputStream open(String id) throws IOException {
+        File file = ObjectPaths.of(dir, id);
+        if (!file.isFile()) {
+            byte[] packed = PackFile.lookup(file);
+            if (packed == null && PackFile.refresh(dir)) {
+                packed = PackFile.lookup(file);
+            }
+            if (packed != null) {
+                return new ByteArrayInputStream(packed);
+            }
+        }
+        return new FileInputStream(file);
+    }
+
+    @Override
+    public void write(String id, byte[] contents) {
+        ObjectPaths.migrate(dir);
+        File file = ObjectPaths.of(dir, id);
+        File temp = tempFor(file);
+        try {
+            writeContents(temp, contents);
+            install(temp, file);
+        } finally {
+            discard(temp);
+        }
+    }
+
+    @Override
+    public Output create(String id) throws IOException {
+        ObjectPaths.migrate(dir);
+        return output(ObjectPaths.of(dir, id));
+    }
+
+    /** Returns a stream that writes to a temporary file beside FILE and
+     *  renames it to FILE once committed. */
+    static Output output(File file) throws IOException {
+        File temp = tempFor(file);
+        try {
+            return new TempOutput(temp, file);
+        } catch (IOException | RuntimeException excp) {
+            discard(temp);
+            throw excp;
+        }
+    }
+
+    /** Returns a new empty temporary file beside FILE, with the default
+     *  permissions of a new file, as the object it becomes should have.
+     *  Its name is unique to this process and call.  The directory is
+     *  made again if a repack removes it, empty, in the meantime. */
+    private static File tempFor(File file) {
+        for (int tries = 0; ; tries += 1) {
+            File temp = new File(file.getParentFile(), file.getName() + "."
+                                 + PID + "." + TEMP_COUNT.incrementAndGet()
+                                 + TEMP_SUFFIX);
+            try {
+                file.getParentFile().mkdirs();
+                return Files.createFile(temp.toPath()).toFile();
+            } catch (NoSuchFileException | FileAlreadyExistsException excp) {
+                if (tries == 2) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Renames the finished object TEMP to FILE. */
+    private static void install(File temp, File file) {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        UNSYNCED.add(file);
+    }
+
+    /** Deletes TEMP if it is still there, as after a failed write.  A
+     *  temporary file that cannot be deleted is only wasted space, so
+     *  failing to delete it does not hide the outcome of the write. */
+    private static void discard(File temp) {
+        try {
+            Files.deleteIfExists(temp.toPath());
+        } catch (IOException excp) {
+            /* Ignore. */
+        }
+    }
+
+    /** A stream onto a temporary file that installs it as an object only
+     *  when committed, and otherwise deletes it when closed. */
+    private static class TempOutput extends ObjectStore.Output {
+
+        /** The temporary file written. */
+        private final File temp;
+        /** Where the finished object goes. */
+        private final File file;
+        /** The stream onto TEMP. */
+        private final FileOutputStream out;
+        /** True once this stream has been committed or closed. */
+        private boolean done;
+
+        /** A stream writing TEMP, to be installed as FILE. */
+        TempOutput(File temp, File file) throws IOException {
+            this.temp = temp;
+            this.file = file;
+            this.out = new FileOutputStream(temp);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public WritableByteChannel channel() {
+            return out.getChannel();
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                out.close();
+                install(temp, file);
+            } finally {
+                discard(temp);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                out.close();
+            } finally {
+                discard(temp);
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(String id) {
+        return ObjectPaths.of(dir, id).delete();
+    }
+
+    @Override
+    public List<String> ids() {
+        List<String> loose = ObjectPaths.idsIn(dir);
+        if (loose == null) {
+            return new ArrayList<>();
+        }
+        TreeSet<String> result = new TreeSet<>(loose);
+        result.addAll(PackFile.packedNamesIn(dir));
+        return new ArrayList<>(result);
+    }
+
+    @Override
+    public File looseFile(String id) {
+        File file = ObjectPaths.of(dir, id);
+        return file.isFile() ? file : null;
+    }
+
+    /** Forces every loose object written since the last call to disk,
+     *  with the directories that name them. */
+    static void syncWritten() {
+        if (UNSYNCED.isEmpty()) {
+            return;
+        }
+        HashSet<File> dirs = new HashSet<>();
+        for (Iterator<File> files = UNSYNCED.iterator(); files.hasNext(); ) {
+            File file = files.next();
+            files.remove();
+            if (force(file)) {
+                dirs.add(file.getParentFile());
+            }
+        }
+        dirs.forEach(FileObjectStore::force);
+    }
+
+    /** Forces FILE to disk, and returns true iff it exists.  A directory
+     *  that cannot be forced, as on some systems, is left as it is. */
+    private static boolean force(File file) {
+        if (!file.exists()) {
+            return false;
+        }
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return dir.getPath();
+    }
+}
@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The store of a repository's state in its serialized Repository file
+ *  and the {@link Journal} beside it.  Reads load the snapshot and
+ *  replay the journal; each change is appended to the journal as a
+ *  single record, or made to the state a thread holds in memory (see
+ *  {@link Journal#hold}).
+ *
+ *  @author Alec Luk
+ */
+class FileRefStore implements RefStore {
+
+    /** The journal of the state. */
+    private final Journal journal;
+
+    /** The store of the repository serialized in FILE. */
+    FileRefStore(File file) {
+        this.journal = Journal.of(file);
+    }
+
+    @Override
+    public Map<String, String> heads() {
+        return new TreeMap<>(Journal.map(journal.current(), Journal.HEAD));
+    }
+
+    @Override
+    public void setHead(String branch, String id) {
+        journal.update(Journal.HEAD, branch, id);
+    }
+
+    @Override
+    public boolean compareAndSetHead(String branch, String expected, String id) {
+        return journal.compareAndSet(Journal.HEAD, branch, expected, id);
+    }
+
+    @Override
+    public String currentBranch() {
+        return Journal.currentBranch(journal.current());
+    }
+
+    @Override
+    public void setCurrentBranch(String branch) {
+        journal.update(Journal.CURRENT, branch, null);
+    }
+
+    @Override
+    public Map<String, String> stagedAdditions() {
+        return new TreeMap<>(Journal.map(journal.current(), Journal.ADDITION));
+    }
+
+    @Override
+    public Map<String, String> stagedRemovals() {
+        return new TreeMap<>(Journal.map(journal.current(), Journal.REMOVAL));
+    }
+
+    @Override
+    public void stageAddition(String name, String id) {
+        journal.update(Journal.ADDITION, name, id);
+    }
+
+    @Override
+    public void stageRemoval(String name, String id) {
+        journal.update(Journal.REMOVAL, name, id);
+    }
+
+    @Override
+    public Repository load() {
+        return journal.load();
+    }
+
+    @Override
+    public void save(Repository repo) {
+        journal.save(repo);
+    }
+}
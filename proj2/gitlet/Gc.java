@@ -0,0 +1,321 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Garbage collection: removes the objects that nothing can reach any
+ *  more, such as the commits of a removed branch or those a reset moved
+ *  away from, and the blobs, trees and chunks only they used.
+ *
+ *  Usage: java gitlet.Gc           collects garbage and reports what was
+ *                                  removed;
+ *         java gitlet.Gc --auto    does so only if there are more loose
+ *                                  commits and trees than the "gc.auto"
+ *                                  setting of {@link Config}.
+ *  {@link Main} also accepts "gc" as a command, and with "gc.auto" set,
+ *  the daemon and batch mode run the automatic form after each command.
+ *
+ *  The roots are the head of every branch and the blobs staged for
+ *  addition, as the {@link RefStore} has them.  Marking walks from them
+ *  on a fork-join pool, one task per object, so commits, trees and blobs
+ *  are read in parallel.  A blob keeps its delta base and its chunks
+ *  alive.  Everything unmarked is
+ *  then swept: loose objects are deleted, packs holding dead objects are
+ *  rewritten without them, and the plain copies of dead blobs kept for
+ *  checkout by link go too.  Finally the loose commits and trees are
+ *  folded into packs, and the indexes over commits are rebuilt.
+ *
+ *  A commit that is swept is gone: it no longer shows in global-log or
+ *  find, and cannot be checked out or reset to.
+ *
+ *  Collection holds the OBJECTS {@link RepoLock}, so only one runs at a
+ *  time, but other commands may go on writing objects meanwhile.  A
+ *  loose object written less than "gc.grace" seconds before collection
+ *  began may belong to a command that has not yet recorded it, so it is
+ *  kept whether or not it is reachable, and so is everything it refers
+ *  to, such as the base of a new delta blob.
+ *
+ *  @author Alec Luk
+ */
+public class Gc {
+
+    /** The command name accepted by Main. */
+    static final String COMMAND = "gc";
+    /** Argument asking for collection only above the threshold. */
+    private static final String AUTO = "--auto";
+    /** The setting giving the number of loose commits and trees above
+     *  which collection runs automatically; 0 turns it off. */
+    static final String AUTO_KEY = "gc.auto";
+    /** The setting giving the age in seconds below which a loose object
+     *  is never swept. */
+    static final String GRACE_KEY = "gc.grace";
+    /** Value of GRACE_KEY when it is not set. */
+    static final int DEFAULT_GRACE = 10;
+
+    /** Kinds of objects, as indexes into the sets of marked ids. */
+    private static final int COMMIT = 0, TREE = 1, BLOB = 2, CHUNK = 3;
+    /** Names of the kinds, for the summary. */
+    private static final String[] KIND_NAMES = {"commit", "tree", "blob", "chunk"};
+    /** Directories of the kinds. */
+    private static final File[] KIND_DIRS = {
+        COMMITS_DIR, Tree.TREES_DIR, BLOBS_DIR, Chunks.CHUNKS_DIR
+    };
+
+    /** Ids of the live objects, by kind. */
+    private final List<Set<ObjectId>> live = new ArrayList<>();
+    /** Loose objects last modified after this time, in milliseconds, are
+     *  kept. */
+    private final long cutoff;
+
+    /** A collection with nothing marked yet. */
+    private Gc() {
+        for (int kind = 0; kind < KIND_DIRS.length; kind += 1) {
+            live.add(ConcurrentHashMap.newKeySet());
+        }
+        cutoff = System.currentTimeMillis()
+            - TimeUnit.SECONDS.toMillis(Config.getInt(GRACE_KEY, DEFAULT_GRACE));
+    }
+
+    /** Collects garbage in the repository in the current directory, or
+     *  only if it is due, if ARGS is {"--auto"}. */
+    public static void main(String[] args) {
+        if (args.length > 1 || args.length == 1 && !args[0].equals(AUTO)) {
+            message("Incorrect operands.");
+            System.exit(0);
+        }
+        Main.checkGitletexists();
+        try {
+            if (args.length == 0) {
+                run();
+            } else {
+                runIfDue();
+            }
+        } catch (GitletException excp) {
+            message(excp.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /** Returns COUNT followed by NAME, made plural unless COUNT is 1. */
+    private static String counted(long count, String name) {
+        return count + " " + name + (count == 1 ? "" : "s");
+    }
+
+    /** Collects garbage if there are more loose commits and trees than
+     *  the "gc.auto" setting allows. */
+    static void runIfDue() {
+        int threshold = Config.getInt(AUTO_KEY, 0);
+        if (threshold <= 0 || !GITLET_DIR.isDirectory()) {
+            return;
+        }
+        if (looseCount(COMMITS_DIR) + looseCount(Tree.TREES_DIR) > threshold) {
+            run();
+        }
+    }
+
+    /** Collects garbage and reports what was removed. */
+    static void run() {
+        long before = sizeOf(GITLET_DIR);
+        int[] removed;
+        int packed;
+        RepoLock objects = RepoLock.acquire(RepoLock.OBJECTS);
+        try (objects) {
+            Gc gc = new Gc();
+            gc.mark();
+            removed = gc.sweep();
+            packed = PackFile.repack(COMMITS_DIR) + PackFile.repack(Tree.TREES_DIR);
+            if (removed[COMMIT] > 0) {
+                CommitCache.clear();
+                IdIndex.rebuild();
+                CommitGraph.rebuild();
+                MessageIndex.rebuild();
+            }
+        }
+        long reclaimed = before - sizeOf(GITLET_DIR);
+        StringBuilder summary = new StringBuilder("Removed");
+        for (int kind = 0; kind < removed.length; kind += 1) {
+            summary.append(kind == 0 ? " " : kind == removed.length - 1 ? " and " : ", ")
+                .append(counted(removed[kind], KIND_NAMES[kind]));
+        }
+        message("%s; packed %s; reclaimed %s.", summary, counted(packed, "object"),
+                counted(Math.max(reclaimed, 0), "byte"));
+    }
+
+    /** Marks every object reachable from the branch heads, the staging
+     *  area and the loose objects within the grace period. */
+    private void mark() {
+        RefStore refs = RefStore.current();
+        Collection<String> heads = refs.heads().values();
+        Collection<String> staged = refs.stagedAdditions().values();
+        ForkJoinPool.commonPool().invoke(new Mark(null, -1, null) {
+            @Override
+            public void compute() {
+                heads.forEach(id -> visit(COMMIT, ObjectId.fromHex(id)));
+                staged.forEach(id -> visit(BLOB, ObjectId.fromHex(id)));
+                for (int kind = 0; kind < KIND_DIRS.length; kind += 1) {
+                    for (String id : graced(KIND_DIRS[kind])) {
+                        visit(kind, ObjectId.fromHex(id));
+                    }
+                }
+                tryComplete();
+            }
+        });
+    }
+
+    /** The task of marking the objects an object refers to.  Each new
+     *  object found is marked live and handed to a task of its own; the
+     *  task completes once all those it started have. */
+    private class Mark extends CountedCompleter<Void> {
+
+        /** Tasks are never serialized; this only keeps the compiler
+         *  quiet. */
+        private static final long serialVersionUID = 1L;
+
+        /** The kind of the object. */
+        private final int kind;
+        /** Its id. */
+        private final ObjectId id;
+
+        /** A task for the object ID of kind KIND, started by PARENT. */
+        Mark(CountedCompleter<?> parent, int kind, ObjectId id) {
+            super(parent);
+            this.kind = kind;
+            this.id = id;
+        }
+
+        @Override
+        public void compute() {
+            File file = ObjectPaths.of(KIND_DIRS[kind], id.toString());
+            switch (kind) {
+            case COMMIT:
+                Commit commit = readObject(file, Commit.class);
+                visit(COMMIT, ObjectId.fromHexOrNull(commit.getParent1()));
+                visit(COMMIT, ObjectId.fromHexOrNull(commit.getParent2()));
+                if (commit.getTreeId() != null) {
+                    visit(TREE, commit.getTreeId());
+                } else {
+                    commit.getBlobs().values().forEach(
+                        blob -> visit(BLOB, ObjectId.fromHex(blob)));
+                }
+                break;
+            case TREE:
+                Tree.forEachEntry(id, blob -> visit(BLOB, blob),
+                                  subtree -> visit(TREE, subtree));
+                break;
+            case BLOB:
+                visit(BLOB, Delta.baseOf(file));
+                Chunks.chunksOf(file).forEach(chunk -> visit(CHUNK, chunk));
+                break;
+            default:
+                break;
+            }
+            tryComplete();
+        }
+
+        /** Marks the object CHILD of kind CHILDKIND live and starts a task
+         *  for it, unless it is null or already marked.  Chunks refer to
+         *  nothing, so they need no task. */
+        void visit(int childKind, ObjectId child) {
+            if (child != null && live.get(childKind).add(child) && childKind != CHUNK) {
+                addToPendingCount(1);
+                new Mark(this, childKind, child).fork();
+            }
+        }
+    }
+
+    /** Deletes every object not marked live, and the plain copies of dead
+     *  blobs, and returns the number of objects deleted by kind. */
+    private int[] sweep() {
+        int[] removed = new int[KIND_DIRS.length];
+        for (int kind = 0; kind < KIND_DIRS.length; kind += 1) {
+            Set<ObjectId> alive = live.get(kind);
+            File dir = KIND_DIRS[kind];
+            List<String> loose = ObjectPaths.idsIn(dir);
+            if (loose == null) {
+                continue;
+            }
+            for (String id : loose) {
+                File file = ObjectPaths.of(dir, id);
+                if (isDead(id, alive) && file.lastModified() <= cutoff) {
+                    if (!file.delete()) {
+                        throw new IllegalArgumentException("could not delete " + file);
+                    }
+                    removed[kind] += 1;
+                }
+            }
+            ObjectPaths.removeEmptyDirs(dir);
+            removed[kind] += PackFile.prune(dir, name -> !isDead(name, alive));
+        }
+        List<String> copies = ObjectPaths.idsIn(BlobLinks.LINKS_DIR);
+        if (copies != null) {
+            for (String id : copies) {
+                if (isDead(id, live.get(BLOB))) {
+                    ObjectPaths.of(BlobLinks.LINKS_DIR, id).delete();
+                }
+            }
+            ObjectPaths.removeEmptyDirs(BlobLinks.LINKS_DIR);
+        }
+        /* Nothing is kept in the old staging directory any more. */
+        File[] stale = STAGEDFILES_DIR.listFiles(File::isFile);
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+        return removed;
+    }
+
+    /** Returns the ids of the loose objects in DIR within the grace
+     *  period. */
+    private List<String> graced(File dir) {
+        List<String> result = new ArrayList<>();
+        List<String> loose = ObjectPaths.idsIn(dir);
+        if (loose != null) {
+            for (String id : loose) {
+                if (ObjectPaths.of(dir, id).lastModified() > cutoff) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns true iff NAME is the name of an object whose id is not in
+     *  ALIVE.  Files whose names are not ids are left alone. */
+    private static boolean isDead(String name, Set<ObjectId> alive) {
+        try {
+            return !alive.contains(ObjectId.fromHex(name));
+        } catch (IllegalArgumentException excp) {
+            return false;
+        }
+    }
+
+    /** Returns the number of loose objects in object directory DIR. */
+    private static int looseCount(File dir) {
+        List<String> ids = ObjectPaths.idsIn(dir);
+        return ids == null ? 0 : ids.size();
+    }
+
+    /** Returns the total size of the files under DIR, in bytes. */
+    private static long sizeOf(File dir) {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            return paths.map(Path::toFile).filter(File::isFile).mapToLong(File::length).sum();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** A sorted index of all commit ids, for resolving abbreviated ids and
+ *  checking whether a commit exists without listing the commits
+ *  directory.
+ *
+ *  The index has two parts.  The base file holds the magic "GIDS", a
+ *  version int, a count, a 256-entry fan-out table of cumulative counts
+ *  by first byte, and then the raw 20-byte ids in sorted order; it is
+ *  memory-mapped and searched by bisection.  Ids added since the base was
+ *  written are appended, unsorted, to a small log file, which is merged
+ *  into a new base once it holds MAX_LOG ids.  Either file is rebuilt
+ *  from the commits directory if it goes missing.
+ *
+ *  @author Alec Luk
+ */
+class IdIndex {
+
+    /** The sorted base file. */
+    static final File BASE_FILE = join(GITLET_DIR, "commit-ids");
+    /** The log of ids added since BASE_FILE was written. */
+    static final File LOG_FILE = join(GITLET_DIR, "commit-ids.log");
+    /** Magic number at the start of the base file. */
+    private static final int MAGIC = 0x47494453;
+    /** Version of the base file format. */
+    private static final int VERSION = 1;
+    /** Number of raw bytes in an id. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+    /** Offset of the fan-out table in the base file. */
+    private static final int FANOUT_START = 12;
+    /** Offset of the first id in the base file. */
+    private static final int IDS_START = FANOUT_START + 256 * 4;
+    /** Number of logged ids that triggers a merge into the base. */
+    private static final int MAX_LOG = 256;
+
+    /** The mapped base file. */
+    private final ByteBuffer base;
+    /** Number of ids in the base file. */
+    private final int count;
+    /** The ids in the log file. */
+    private final ObjectId[] logged;
+
+    /** An index over BASE and the log LOGGED. */
+    private IdIndex(ByteBuffer base, ObjectId[] logged) {
+        this.base = base;
+        this.count = base.getInt(8);
+        this.logged = logged;
+    }
+
+    /** Returns the index of the current repository, rebuilding it from
+     *  the commits directory if it is missing. */
+    static IdIndex load() {
+        ByteBuffer base = mapBase();
+        if (base == null) {
+            rebuild();
+            base = mapBase();
+        }
+        return new IdIndex(base, readLog());
+    }
+
+    /** Returns the base file, mapped, or null if it is missing or not a
+     *  base file. */
+    private static ByteBuffer mapBase() {
+        if (!BASE_FILE.isFile()) {
+            return null;
+        }
+        try (FileChannel ch = FileChannel.open(BASE_FILE.toPath())) {
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.limit() < IDS_START || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                return null;
+            }
+            return buf;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the ids in the log file, ignoring a torn last entry. */
+    private static ObjectId[] readLog() {
+        if (!LOG_FILE.isFile()) {
+            return new ObjectId[0];
+        }
+        return idsIn(readContents(LOG_FILE));
+    }
+
+    /** Returns the ids whose raw bytes are CONTENTS, ignoring a torn last
+     *  entry. */
+    private static ObjectId[] idsIn(byte[] contents) {
+        ObjectId[] result = new ObjectId[contents.length / ID_BYTES];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = ObjectId.fromBytes(contents, i * ID_BYTES);
+        }
+        return result;
+    }
+
+    /** Adds commit ID to the index by appending it to the log, without
+     *  reading the index; an id added twice is dropped when the log is
+     *  merged into the base, which happens once it holds MAX_LOG ids. */
+    static void add(String id) {
+        if (!BASE_FILE.isFile()) {
+            rebuild();
+            return;
+        }
+        withLog(log -> {
+            /* Write over a torn last entry, if there is one. */
+            long size = log.size() - log.size() % ID_BYTES;
+            ByteBuffer buf = ByteBuffer.wrap(ObjectId.fromHex(id).toBytes());
+            while (buf.hasRemaining()) {
+                log.write(buf, size + buf.position());
+            }
+            log.truncate(size + ID_BYTES);
+            if (size / ID_BYTES + 1 >= MAX_LOG) {
+                TreeSet<ObjectId> ids = new TreeSet<>(Arrays.asList(idsIn(readAll(log))));
+                ByteBuffer base = mapBase();
+                if (base == null) {
+                    ids = storedIds();
+                } else {
+                    for (int k = base.getInt(8) - 1; k >= 0; k -= 1) {
+                        ids.add(ObjectId.fromBuffer(base, IDS_START + k * ID_BYTES));
+                    }
+                }
+                writeBase(ids);
+                log.truncate(0);
+            }
+        });
+    }
+
+    /** Rewrites the base file from the commits directory and empties the
+     *  log. */
+    static void rebuild() {
+        withLog(log -> {
+            writeBase(storedIds());
+            log.truncate(0);
+        });
+    }
+
+    /** An action on the open log file. */
+    private interface LogAction {
+        /** Performs this action on LOG. */
+        void run(FileChannel log) throws IOException;
+    }
+
+    /** Performs ACTION on the log file, which is locked against the other
+     *  threads and processes that add ids or rewrite the base meanwhile.
+     *  Since a commit is stored before it is added, an id added while the
+     *  base is rewritten from the commits directory is either listed there
+     *  or logged after the log is emptied. */
+    private static synchronized void withLog(LogAction action) {
+        try (FileChannel log = FileChannel.open(LOG_FILE.toPath(), StandardOpenOption.CREATE,
+                                                StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE)) {
+            FileLock lock = log.lock();
+            try {
+                action.run(log);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the open file CH. */
+    private static byte[] readAll(FileChannel ch) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) ch.size());
+        while (buf.hasRemaining() && ch.read(buf, buf.position()) >= 0) {
+            continue;
+        }
+        return buf.array();
+    }
+
+    /** Returns the ids of the stored commits. */
+    private static TreeSet<ObjectId> storedIds() {
+        TreeSet<ObjectId> ids = new TreeSet<>();
+        for (String name : plainFilenamesIn(COMMITS_DIR)) {
+            if (name.length() == UID_LENGTH) {
+                ids.add(ObjectId.fromHex(name));
+            }
+        }
+        return ids;
+    }
+
+    /** Writes a base file holding IDS, which are in order. */
+    private static void writeBase(SortedSet<ObjectId> ids) {
+        ByteBuffer buf = ByteBuffer.allocate(IDS_START + ids.size() * ID_BYTES);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(ids.size());
+        int[] fanout = new int[256];
+        for (ObjectId id : ids) {
+            fanout[id.digit(0) << 4 | id.digit(1)] += 1;
+        }
+        int total = 0;
+        for (int n : fanout) {
+            total += n;
+            buf.putInt(total);
+        }
+        for (ObjectId id : ids) {
+            id.put(buf);
+        }
+        File temp = join(GITLET_DIR, "commit-ids.tmp");
+        writeContents(temp, buf.array());
+        if (!temp.renameTo(BASE_FILE)) {
+            throw new IllegalArgumentException("could not write " + BASE_FILE);
+        }
+    }
+
+    /** Returns true iff commit ID exists. */
+    boolean contains(String id) {
+        if (id == null || id.length() != UID_LENGTH) {
+            return false;
+        }
+        return !matching(id, 1).isEmpty();
+    }
+
+    /** Returns the full id of the one commit whose id starts with PREFIX.
+     *  Throws a GitletException if there is none or more than one.
+     *  Checkout resolves the abbreviated ids given to checkout and reset
+     *  this way. */
+    String resolve(String prefix) {
+        List<String> matches = matching(prefix, 2);
+        if (matches.isEmpty()) {
+            throw error("No commit with that id exists.");
+        } else if (matches.size() > 1) {
+            throw error("Commit id %s is ambiguous.", prefix);
+        }
+        return matches.get(0);
+    }
+
+    /** Returns up to LIMIT ids starting with PREFIX, a hex string. */
+    List<String> matching(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        prefix = prefix.toLowerCase();
+        if (prefix.isEmpty() || prefix.length() > UID_LENGTH) {
+            return result;
+        }
+        for (int i = 0; i < prefix.length(); i += 1) {
+            if (Character.digit(prefix.charAt(i), 16) < 0) {
+                return result;
+            }
+        }
+        ObjectId low = ObjectId.fromHex(prefix + "0".repeat(UID_LENGTH - prefix.length()));
+        int first = low.digit(0) << 4 | low.digit(1);
+        int lo = first == 0 ? 0 : base.getInt(FANOUT_START + (first - 1) * 4);
+        int hi = base.getInt(FANOUT_START + first * 4);
+        /* Find the first id at or above LOW, then take ids while they
+         * still start with PREFIX. */
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (idAt(mid).compareTo(low) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int k = lo; k < count && result.size() < limit; k += 1) {
+            ObjectId id = idAt(k);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id.toString());
+        }
+        for (ObjectId id : logged) {
+            if (result.size() < limit && id.startsWith(prefix)
+                && !result.contains(id.toString())) {
+                result.add(id.toString());
+            }
+        }
+        return result;
+    }
+
+    /** Returns id K of the base. */
+    private ObjectId idAt(int k) {
+        return ObjectId.fromBuffer(base, IDS_START + k * ID_BYTES);
+    }
+}
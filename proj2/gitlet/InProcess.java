@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.lang.reflect.InvocationTargetException;
+
+/** Runs gitlet commands inside the current JVM, as the daemon and batch
+ *  mode do.  Main and Repository end a command with System.exit, so
+ *  commands run only where the gitlet classes were loaded by an
+ *  {@link ExitTrap}, which turns those calls into calls to exit here.
+ *  During a command, exit throws an exception carrying the exit status
+ *  instead of stopping the JVM.
+ *
+ *  @author Alec Luk
+ */
+class InProcess {
+
+    /** Thrown in place of exiting the JVM during a command. */
+    private static class ExitTrapped extends RuntimeException {
+        /** Never serialized; declared for -Xlint:serial. */
+        private static final long serialVersionUID = 1L;
+
+        /** The status passed to System.exit. */
+        private final int status;
+
+        /** An exit with STATUS. */
+        ExitTrapped(int status) {
+            super("exit " + status);
+            this.status = status;
+        }
+    }
+
+    /** The standard output of each thread that has one of its own. */
+    private static final ThreadLocal<PrintStream> OUT = new ThreadLocal<>();
+    /** The standard output of the JVM, for the other threads. */
+    private static PrintStream stdout;
+
+    /** True on a thread that is running a command. */
+    private static final ThreadLocal<Boolean> IN_COMMAND =
+        ThreadLocal.withInitial(() -> false);
+
+    /** Ends the command running on this thread with exit status STATUS,
+     *  or the JVM if no command is running on it.  The classes an
+     *  ExitTrap loads call this in place of System.exit. */
+    static void exit(int status) {
+        if (IN_COMMAND.get()) {
+            throw new ExitTrapped(status);
+        }
+        Runtime.getRuntime().exit(status);
+    }
+
+    /** Runs the main method of ENTRY with ARGS again, in classes loaded by
+     *  an ExitTrap, and returns true, unless ENTRY was loaded by one; then
+     *  returns false at once.  An entry point that runs commands
+     *  in-process starts with this. */
+    static boolean relaunch(Class<?> entry, String[] args) throws IOException {
+        if (ExitTrap.loaded(entry)) {
+            return false;
+        }
+        try {
+            Class<?> trapped = Class.forName(entry.getName(), true,
+                                             new ExitTrap(entry.getClassLoader()));
+            trapped.getMethod("main", String[].class).invoke(null, (Object) args);
+        } catch (InvocationTargetException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (ReflectiveOperationException excp) {
+            throw new IllegalStateException(excp);
+        }
+        return true;
+    }
+
+    /** Runs the gitlet command ARGS, as {@link Main} does, and returns
+     *  the status it would have exited the JVM with.  An uncaught
+     *  exception is reported on the standard error as the JVM would and
+     *  gives status 1.  After a command that succeeds, garbage is
+     *  collected if it is due. */
+    static int run(String[] args) {
+        if (!ExitTrap.loaded(InProcess.class)) {
+            throw new IllegalStateException("gitlet classes not loaded by gitlet.ExitTrap");
+        }
+        int status = trapped(() -> Main.main(args));
+        if (status == 0) {
+            trapped(Gc::runIfDue);
+        }
+        return status;
+    }
+
+    /** Runs ARGS as run(ARGS) does, with what this thread writes to the
+     *  standard output going to OUT meanwhile.  Commands on other threads
+     *  may do the same at the same time, each with its own output. */
+    static int run(String[] args, PrintStream out) {
+        routeOutput();
+        PrintStream previous = OUT.get();
+        OUT.set(out);
+        try {
+            return run(args);
+        } finally {
+            out.flush();
+            OUT.set(previous);
+        }
+    }
+
+    /** Makes System.out write to the output of the current thread, if
+     *  that has not been done yet. */
+    private static synchronized void routeOutput() {
+        if (stdout != null) {
+            return;
+        }
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                target().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                target().write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                target().flush();
+            }
+
+            /** Returns the output of the current thread. */
+            private PrintStream target() {
+                PrintStream out = OUT.get();
+                return out != null ? out : stdout;
+            }
+        }, false, StandardCharsets.UTF_8));
+    }
+
+    /** Runs COMMAND with exits trapped and returns its exit status, as
+     *  for run. */
+    private static int trapped(Runnable command) {
+        IN_COMMAND.set(true);
+        try {
+            command.run();
+            return 0;
+        } catch (ExitTrapped excp) {
+            return excp.status;
+        } catch (RuntimeException | Error excp) {
+            excp.printStackTrace();
+            return 1;
+        } finally {
+            IN_COMMAND.set(false);
+            System.out.flush();
+        }
+    }
+}
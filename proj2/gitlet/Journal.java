@@ -0,0 +1,610 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import static gitlet.Utils.*;
+
+/** The write-ahead journal of a repository's state: the branch heads,
+ *  the current branch and the staging area held by the serialized
+ *  Repository.  Saving the state no longer rewrites the whole file.
+ *  Instead the changes since the last save are appended to a journal
+ *  beside it as records, and the file itself becomes a snapshot that is
+ *  only rewritten when the journal is compacted.  Loading reads the
+ *  snapshot and replays the journal over it.
+ *
+ *  Each record is its length, the CRC-32 of its body, and the body: a
+ *  kind byte, a key, and an optional value.  The records of one save
+ *  form a batch ended by an END record, and a batch is applied only if
+ *  all of it, END included, was written intact, so a crash in the middle
+ *  of a save leaves the state as it was.  A torn tail is cut off before
+ *  the next batch is appended.
+ *
+ *  Batches are made durable by group commit: every writer appends its
+ *  batch and then waits for an fsync, but one fsync covers every batch
+ *  appended before it, so writers of one process that arrive together,
+ *  such as the commands of several clients of the {@link Daemon}, share
+ *  one.  The
+ *  loose objects written since the last fsync are forced first (see
+ *  {@link FileObjectStore#syncWritten}), so no durable record refers to
+ *  an object that is not.  Once the journal holds more records than the
+ *  "journal.compact" setting of {@link Config}, it is compacted: the
+ *  current state is written to a new snapshot, which replaces the old
+ *  one atomically, and the journal is emptied.
+ *
+ *  Several processes may share a repository.  A save writes only what
+ *  the command changed since it loaded the state, so two commands
+ *  staging different files both keep their changes.  Changes to the
+ *  staging area are made under the INDEX {@link RepoLock}, and changes
+ *  to the branches under the REFS lock, as a compare-and-swap: if a
+ *  branch head or the current branch is no longer what the command
+ *  loaded, the save fails and nothing is written.  Appending and
+ *  compacting also lock the journal file itself.  Loading takes no lock
+ *  at all: it relies on whole batches and an atomically replaced
+ *  snapshot, and reads again if a compaction replaced the snapshot
+ *  while it was reading.
+ *
+ *  @author Alec Luk
+ */
+class Journal {
+
+    /** Record kinds: a branch head, the current branch, a file staged
+     *  for addition, a file staged for removal. */
+    static final int HEAD = 1, CURRENT = 2, ADDITION = 3, REMOVAL = 4;
+    /** Kind of the record that ends a batch. */
+    private static final int END = 0;
+    /** Name of the journal file, beside the snapshot. */
+    static final String NAME = "journal";
+    /** The setting giving the number of records above which the journal
+     *  is compacted. */
+    static final String COMPACT_KEY = "journal.compact";
+    /** Number of records above which the journal is compacted when
+     *  COMPACT_KEY is not set. */
+    static final int DEFAULT_COMPACT = 256;
+    /** Size of the length and checksum before each record body. */
+    private static final int RECORD_HEADER = 8;
+    /** Longest record body accepted when reading. */
+    private static final int MAX_RECORD = 1 << 16;
+
+    /** Fields of Repository holding the state, by record kind. */
+    private static final Field[] FIELDS = {
+        null, field("leadCommits"), field("currBranchName"),
+        field("stageAdd"), field("stageRemove")
+    };
+
+    /** Journals opened in this process, by snapshot. */
+    private static final ConcurrentHashMap<File, Journal> OPEN =
+        new ConcurrentHashMap<>();
+
+    /** One change to the state: KEY maps to VALUE, or is removed if
+     *  VALUE is null, in the state of kind KIND.  For CURRENT, KEY is the
+     *  new current branch. */
+    private static class Change {
+        /** The kind of state changed. */
+        private final int kind;
+        /** The branch or file name. */
+        private final String key;
+        /** The new value, or null. */
+        private final String value;
+
+        /** A change of KEY to VALUE in the state of kind KIND. */
+        Change(int kind, String key, String value) {
+            this.kind = kind;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /** A copy of the state held by a Repository. */
+    private static class State {
+        /** The maps of the state, by record kind; CURRENT holds the
+         *  current branch under the key "". */
+        private final List<Map<String, String>> maps = new ArrayList<>();
+
+        /** The state of REPO. */
+        State(Repository repo) {
+            for (int kind = END; kind < FIELDS.length; kind += 1) {
+                if (kind == CURRENT) {
+                    HashMap<String, String> current = new HashMap<>();
+                    current.put("", currentBranch(repo));
+                    maps.add(current);
+                } else {
+                    maps.add(kind == END ? new HashMap<>() : new HashMap<>(map(repo, kind)));
+                }
+            }
+        }
+
+        /** Returns what KEY maps to in the state of kind KIND, the current
+         *  branch if KIND is CURRENT. */
+        String get(int kind, String key) {
+            return maps.get(kind).get(kind == CURRENT ? "" : key);
+        }
+
+        /** Returns the changes that turn this state into TO for the kinds
+         *  KINDS. */
+        List<Change> diff(State to, int... kinds) {
+            List<Change> result = new ArrayList<>();
+            for (int kind : kinds) {
+                Map<String, String> before = maps.get(kind), after = to.maps.get(kind);
+                TreeSet<String> keys = new TreeSet<>(before.keySet());
+                keys.addAll(after.keySet());
+                for (String key : keys) {
+                    if (!Objects.equals(before.get(key), after.get(key))) {
+                        result.add(kind == CURRENT ? new Change(CURRENT, after.get(key), null)
+                                   : new Change(kind, key, after.get(key)));
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /** The state each thread last loaded or saved, which its next save is
+     *  compared against. */
+    private final ThreadLocal<State> base = new ThreadLocal<>();
+    /** The state each thread holds in memory in place of the files, or
+     *  null if it holds none (see hold). */
+    private final ThreadLocal<Repository> held = new ThreadLocal<>();
+
+    /** The snapshot. */
+    private final File snapshot;
+    /** The journal file. */
+    private final File file;
+    /** The journal opened for appending, or null if it is not open. */
+    private FileChannel channel;
+    /** Number of records in the journal when last appended to. */
+    private long records;
+    /** Number of batches appended by this process. */
+    private long appended;
+    /** Number of those batches known to be durable. */
+    private long synced;
+    /** Held while forcing the journal to disk, so that one writer
+     *  forces on behalf of all those waiting. */
+    private final Object syncLock = new Object();
+
+    /** The journal of the state snapshot SNAPSHOT. */
+    private Journal(File snapshot) {
+        this.snapshot = snapshot;
+        this.file = new File(snapshot.getParentFile(), NAME);
+    }
+
+    /** Returns the journal of the state snapshot SNAPSHOT. */
+    static Journal of(File snapshot) {
+        return OPEN.computeIfAbsent(snapshot.getAbsoluteFile(), Journal::new);
+    }
+
+    /** Returns the current state: the snapshot with every complete batch
+     *  of the journal applied.  This thread's next save is compared
+     *  against it.  If this thread holds the state, returns a copy of
+     *  that instead. */
+    Repository load() {
+        if (held.get() != null) {
+            return copy(held.get());
+        }
+        Repository repo = read();
+        base.set(new State(repo));
+        return repo;
+    }
+
+    /** Returns the current state as this thread sees it, as load does,
+     *  without taking it as the base of a save. */
+    Repository current() {
+        return held.get() != null ? copy(held.get()) : read();
+    }
+
+    /** Makes this thread hold the state in memory: from now on its loads
+     *  and saves use a copy of the state kept here, and nothing is written
+     *  until flush.  A command that fails after changing what it loaded
+     *  leaves the held state as it was, as it would the files.  Batch
+     *  mode runs its commands this way.  Does nothing if this thread
+     *  already holds the state. */
+    void hold() {
+        if (held.get() == null) {
+            held.set(load());
+        }
+    }
+
+    /** Saves the state this thread holds, if it holds one, as save would
+     *  have, and goes on holding it.  Throws a GitletException, saving
+     *  nothing, if a branch the held commands changed has been changed
+     *  since by another command. */
+    void flush() {
+        Repository repo = held.get();
+        if (repo != null) {
+            held.remove();
+            try {
+                save(repo);
+            } finally {
+                held.set(repo);
+            }
+        }
+    }
+
+    /** Stops holding the state on this thread, without saving it. */
+    void release() {
+        held.remove();
+    }
+
+    /** Returns the current state, as load does, without taking it as the
+     *  base of a save. */
+    Repository read() {
+        while (true) {
+            List<Object> before = identity();
+            Repository repo = readStoredObject(snapshot, Repository.class);
+            byte[] contents = file.isFile() ? readContents(file) : new byte[0];
+            if (before.equals(identity())) {
+                replay(contents, repo);
+                return repo;
+            }
+        }
+    }
+
+    /** Returns what identifies the present snapshot file: a new snapshot
+     *  is a new file. */
+    private List<Object> identity() {
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(snapshot.toPath(), BasicFileAttributes.class);
+            return Arrays.asList(attrs.fileKey(), attrs.lastModifiedTime(), attrs.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Saves REPO as the current state, appending what this thread changed
+     *  since it last loaded or saved the state as one batch.  The first
+     *  save writes the snapshot.  Throws a GitletException, saving
+     *  nothing, if a branch this thread changed has been changed since. */
+    void save(Repository repo) {
+        if (held.get() != null) {
+            held.set(copy(repo));
+            return;
+        }
+        State after = new State(repo);
+        if (!snapshot.isFile()) {
+            RepoLock refs = RepoLock.acquire(RepoLock.REFS);
+            try (refs) {
+                RepoLock index = RepoLock.acquire(RepoLock.INDEX);
+                try (index) {
+                    synchronized (this) {
+                        compact(repo);
+                    }
+                }
+            }
+            base.set(after);
+            return;
+        }
+        State before = base.get() != null ? base.get() : new State(read());
+        List<Change> refChanges = before.diff(after, HEAD, CURRENT);
+        List<Change> indexChanges = before.diff(after, ADDITION, REMOVAL);
+        if (refChanges.isEmpty() && indexChanges.isEmpty()) {
+            return;
+        }
+        RepoLock refs = refChanges.isEmpty() ? null : RepoLock.acquire(RepoLock.REFS);
+        try (refs) {
+            RepoLock index = indexChanges.isEmpty() ? null : RepoLock.acquire(RepoLock.INDEX);
+            try (index) {
+                if (!refChanges.isEmpty()) {
+                    State current = new State(read());
+                    for (Change change : refChanges) {
+                        if (!Objects.equals(current.get(change.kind, change.key),
+                                            before.get(change.kind, change.key))) {
+                            throw error(change.kind == CURRENT
+                                        ? "The current branch was changed by another command."
+                                        : "Branch " + change.key
+                                          + " was changed by another command.");
+                        }
+                    }
+                }
+                List<Change> batch = new ArrayList<>(refChanges);
+                batch.addAll(indexChanges);
+                append(batch);
+            }
+        }
+        base.set(after);
+    }
+
+    /** Records in a batch of its own that KEY maps to VALUE, or is
+     *  removed if VALUE is null, in the state of kind KIND.  For CURRENT,
+     *  KEY is the new current branch. */
+    void update(int kind, String key, String value) {
+        compareAndSet(kind, key, null, value, false);
+    }
+
+    /** Records that KEY maps to VALUE in the state of kind KIND, as update
+     *  does, but only if it now maps to EXPECTED, and returns true iff it
+     *  did.  For CURRENT, KEY is the expected current branch and VALUE the
+     *  new one. */
+    boolean compareAndSet(int kind, String key, String expected, String value) {
+        return compareAndSet(kind, key, expected, value, true);
+    }
+
+    /** Records the change of KEY to VALUE in the state of kind KIND, if
+     *  CHECK is false or KEY now maps to EXPECTED, and returns true iff it
+     *  did. */
+    private boolean compareAndSet(int kind, String key, String expected, String value,
+                                  boolean check) {
+        Change change = kind == CURRENT && check ? new Change(CURRENT, value, null)
+            : new Change(kind, key, value);
+        Repository holding = held.get();
+        if (holding != null) {
+            if (check && !Objects.equals(new State(holding).get(kind, key), expected)) {
+                return false;
+            }
+            apply(holding, change);
+            return true;
+        }
+        String name = kind == HEAD || kind == CURRENT ? RepoLock.REFS : RepoLock.INDEX;
+        RepoLock lock = RepoLock.acquire(name);
+        try (lock) {
+            if (check && !Objects.equals(new State(read()).get(kind, key), expected)) {
+                return false;
+            }
+            append(List.of(change));
+            return true;
+        }
+    }
+
+    /** Appends BATCH, ended by an END record, returning once it is
+     *  durable. */
+    private void append(List<Change> batch) {
+        List<byte[]> encoded = new ArrayList<>();
+        batch.forEach(change -> encoded.add(record(change.kind, change.key, change.value)));
+        encoded.add(record(END, null, null));
+        int size = 0;
+        for (byte[] record : encoded) {
+            size += record.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        encoded.forEach(buf::put);
+        buf.flip();
+        long mine;
+        try {
+            synchronized (this) {
+                open();
+                FileLock lock = channel.lock();
+                try (lock) {
+                    long[] found = replay(readContents(file), null);
+                    if (found[0] < channel.size()) {
+                        channel.truncate(found[0]);
+                    }
+                    while (buf.hasRemaining()) {
+                        channel.write(buf);
+                    }
+                    records = found[1] + encoded.size();
+                }
+                appended += 1;
+                mine = appended;
+            }
+            synchronized (syncLock) {
+                if (synced < mine) {
+                    long upTo;
+                    FileChannel toForce;
+                    synchronized (this) {
+                        upTo = appended;
+                        toForce = channel;
+                    }
+                    FileObjectStore.syncWritten();
+                    toForce.force(false);
+                    synced = upTo;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        synchronized (this) {
+            if (records > Config.getInt(COMPACT_KEY, DEFAULT_COMPACT)) {
+                compact(null);
+            }
+        }
+    }
+
+    /** Opens the journal for appending, if it is not open, or again if
+     *  its file has gone, as when the repository was removed and made
+     *  anew while this process ran. */
+    private void open() throws IOException {
+        if (channel != null && !file.isFile()) {
+            channel.close();
+            channel = null;
+        }
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                       StandardOpenOption.APPEND);
+        }
+    }
+
+    /** Writes REPO, or the current state if REPO is null, as the
+     *  snapshot, replacing the old one atomically, and empties the
+     *  journal. */
+    private void compact(Repository repo) {
+        File temp = new File(snapshot.getParentFile(), snapshot.getName() + ".tmp");
+        try {
+            open();
+            FileLock lock = channel.lock();
+            try (lock) {
+                Files.write(temp.toPath(), serialize(repo != null ? repo : read()));
+                try (FileChannel out = FileChannel.open(temp.toPath(),
+                                                        StandardOpenOption.WRITE)) {
+                    out.force(true);
+                }
+                FileObjectStore.syncWritten();
+                Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+                /* Records are absolute, so replaying ones already in the
+                 * new snapshot is harmless if the journal outlives it. */
+                channel.truncate(0);
+                channel.force(false);
+                records = 0;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Applies every complete batch of the journal CONTENTS to REPO, if it
+     *  is not null.  Returns the length of CONTENTS up to the end of its
+     *  last complete batch, and the number of records in that part. */
+    private static long[] replay(byte[] contents, Repository repo) {
+        ByteBuffer buf = ByteBuffer.wrap(contents);
+        List<Change> pending = new ArrayList<>();
+        long[] result = {0, 0};
+        int count = 0;
+        CRC32 crc = new CRC32();
+        try {
+            while (buf.remaining() >= RECORD_HEADER) {
+                int length = buf.getInt();
+                int checksum = buf.getInt();
+                if (length <= 0 || length > MAX_RECORD || length > buf.remaining()) {
+                    break;
+                }
+                crc.reset();
+                crc.update(contents, buf.position(), length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                DataInputStream body = new DataInputStream(
+                    new ByteArrayInputStream(contents, buf.position(), length));
+                buf.position(buf.position() + length);
+                int kind = body.readUnsignedByte();
+                count += 1;
+                if (kind == END) {
+                    if (repo != null) {
+                        pending.forEach(change -> apply(repo, change));
+                    }
+                    pending.clear();
+                    result[0] = buf.position();
+                    result[1] = count;
+                    continue;
+                }
+                String key = body.readUTF();
+                String value = body.readBoolean() ? body.readUTF() : null;
+                pending.add(new Change(kind, key, value));
+            }
+        } catch (EOFException excp) {
+            /* A record too short for its kind ends the good part. */
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Makes the change CHANGE to REPO. */
+    private static void apply(Repository repo, Change change) {
+        if (change.kind == CURRENT) {
+            setField(repo, CURRENT, change.key);
+        } else if (change.kind > END && change.kind < FIELDS.length) {
+            if (change.value == null) {
+                map(repo, change.kind).remove(change.key);
+            } else {
+                map(repo, change.kind).put(change.key, change.value);
+            }
+        }
+    }
+
+    /** Returns a copy of REPO that shares nothing with it. */
+    static Repository copy(Repository repo) {
+        Repository result = new Repository();
+        for (int kind : new int[] {HEAD, ADDITION, REMOVAL}) {
+            map(result, kind).putAll(map(repo, kind));
+        }
+        setField(result, CURRENT, currentBranch(repo));
+        return result;
+    }
+
+    /** Returns the record of kind KIND for KEY and VALUE. */
+    private static byte[] record(int kind, String key, String value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(bytes);
+            body.writeByte(kind);
+            if (kind != END) {
+                body.writeUTF(key);
+                body.writeBoolean(value != null);
+                if (value != null) {
+                    body.writeUTF(value);
+                }
+            }
+            byte[] contents = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(contents);
+            return ByteBuffer.allocate(RECORD_HEADER + contents.length)
+                .putInt(contents.length).putInt((int) crc.getValue()).put(contents).array();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the map of REPO holding the state of kind KIND (HEAD,
+     *  ADDITION or REMOVAL), creating it if it is missing. */
+    @SuppressWarnings("unchecked")
+    static Map<String, String> map(Repository repo, int kind) {
+        try {
+            Map<String, String> result = (Map<String, String>) FIELDS[kind].get(repo);
+            if (result == null) {
+                result = new HashMap<>();
+                FIELDS[kind].set(repo, result);
+            }
+            return result;
+        } catch (IllegalAccessException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the current branch of REPO. */
+    static String currentBranch(Repository repo) {
+        try {
+            return (String) FIELDS[CURRENT].get(repo);
+        } catch (IllegalAccessException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Makes BRANCH the current branch of REPO. */
+    static void setCurrentBranch(Repository repo, String branch) {
+        setField(repo, CURRENT, branch);
+    }
+
+    /** Sets the field of REPO for the state of kind KIND to VALUE. */
+    private static void setField(Repository repo, int kind, Object value) {
+        try {
+            FIELDS[kind].set(repo, value);
+        } catch (IllegalAccessException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the field NAME of Repository, made accessible.
+     *  Repository does not expose its branches or staging area, so they
+     *  are read and written here directly. */
+    private static Field field(String name) {
+        try {
+            Field result = Repository.class.getDeclaredField(name);
+            result.setAccessible(true);
+            return result;
+        } catch (NoSuchFieldException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
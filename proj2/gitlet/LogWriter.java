@@ -0,0 +1,210 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Streaming output for log and global-log, which {@link Main} runs for
+ *  those commands.
+ *
+ *  Commits are decoded header only: the file table, which these commands
+ *  never print, is skipped.  The next commits' bytes are read ahead on a
+ *  background thread while the current one is formatted, and output goes
+ *  through one large buffered UTF-8 writer rather than a println per
+ *  line.  Output stops after LIMIT commits if a limit is given (-n), and
+ *  as soon as the standard output is found to be closed, as when it is
+ *  piped into head.  The text is the same as the commands have always
+ *  printed.
+ *
+ *  @author Alec Luk
+ */
+class LogWriter {
+
+    /** The commands printed here. */
+    static final String LOG = "log", GLOBAL_LOG = "global-log";
+    /** Size of the output buffer, in chars. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Number of commits read ahead by global-log. */
+    private static final int READ_AHEAD = 32;
+    /** Number of commits between checks for a closed output. */
+    private static final int CHECK_EVERY = 256;
+
+    /** Reads commit bytes ahead of the formatting thread. */
+    private static final ExecutorService PREFETCH = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "gitlet-log-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Where System.out is going. */
+    private final PrintStream stdout = System.out;
+    /** The buffered writer over STDOUT. */
+    private final Writer out = new BufferedWriter(
+        new OutputStreamWriter(stdout, StandardCharsets.UTF_8), BUFFER_SIZE);
+    /** The end of a line, as println ends it on this platform. */
+    private static final String NEWLINE = System.lineSeparator();
+    /** Number of commits still to print, or -1 for no limit. */
+    private int remaining;
+    /** Number of commits printed so far. */
+    private int printed;
+
+    /** A writer that prints at most LIMIT commits, or all of them if
+     *  LIMIT is negative. */
+    private LogWriter(int limit) {
+        this.remaining = limit;
+    }
+
+    /** Runs log or global-log, as ARGS[0] says, with the rest of ARGS
+     *  giving an optional "-n LIMIT". */
+    static void main(String[] args) {
+        Main.checkGitletexists();
+        try {
+            int limit = parseLimit(args, 1);
+            if (args[0].equals(GLOBAL_LOG)) {
+                globalLog(limit);
+            } else {
+                RefStore refs = RefStore.current();
+                log(refs.heads().get(refs.currentBranch()), limit);
+            }
+        } catch (GitletException excp) {
+            message(excp.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /** Prints the history of commit HEAD along first parents, newest
+     *  first, stopping after LIMIT commits unless LIMIT is negative. */
+    static void log(String head, int limit) {
+        LogWriter writer = new LogWriter(limit);
+        CompletableFuture<byte[]> next = prefetch(head);
+        String id = head;
+        while (id != null && writer.wants()) {
+            Commit commit = decodeHeader(next.join());
+            String parent = commit.getParent1();
+            next = parent == null ? null : prefetch(parent);
+            if (!writer.print(id, commit)) {
+                break;
+            }
+            id = parent;
+        }
+        writer.finish();
+    }
+
+    /** Prints every commit ever made, in the order of their ids,
+     *  stopping after LIMIT commits unless LIMIT is negative. */
+    static void globalLog(int limit) {
+        LogWriter writer = new LogWriter(limit);
+        List<String> ids = plainFilenamesIn(COMMITS_DIR);
+        ArrayDeque<CompletableFuture<byte[]>> ahead = new ArrayDeque<>();
+        int fetched = 0;
+        for (String id : ids) {
+            while (fetched < ids.size() && ahead.size() < READ_AHEAD) {
+                ahead.add(prefetch(ids.get(fetched)));
+                fetched += 1;
+            }
+            if (!writer.wants() || !writer.print(id, decodeHeader(ahead.remove().join()))) {
+                break;
+            }
+        }
+        writer.finish();
+    }
+
+    /** Parses the -n LIMIT option in ARGS, starting at index FIRST, and
+     *  returns the limit, or -1 if there is none.  Throws a GitletException
+     *  for anything else. */
+    static int parseLimit(String[] args, int first) {
+        if (args.length == first) {
+            return -1;
+        }
+        if (args.length == first + 2 && args[first].equals("-n")) {
+            try {
+                int limit = Integer.parseInt(args[first + 1]);
+                if (limit >= 0) {
+                    return limit;
+                }
+            } catch (NumberFormatException excp) {
+                /* Reported below. */
+            }
+        }
+        throw error("Incorrect operands.");
+    }
+
+    /** Returns the bytes of commit ID, read on the prefetch thread. */
+    private static CompletableFuture<byte[]> prefetch(String id) {
+        return CompletableFuture.supplyAsync(
+            () -> readObjectContents(ObjectPaths.of(COMMITS_DIR, id)), PREFETCH);
+    }
+
+    /** Returns the commit stored as CONTENTS, decoded header only. */
+    private static Commit decodeHeader(byte[] contents) {
+        try (InputStream in = new BufferedInputStream(new ByteArrayInputStream(contents))) {
+            if (Commit.isEncoded(in)) {
+                return Commit.decode(in, false);
+            }
+            return (Commit) new ObjectInputStream(in).readObject();
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff more commits are to be printed. */
+    private boolean wants() {
+        return remaining != 0;
+    }
+
+    /** Prints COMMIT, whose id is ID.  Returns false iff the output has
+     *  been closed and printing should stop. */
+    private boolean print(String id, Commit commit) {
+        try {
+            out.write("===");
+            out.write(NEWLINE);
+            out.write("commit ");
+            out.write(id);
+            out.write(NEWLINE);
+            out.write("Date: ");
+            out.write(commit.gettimeStamp());
+            out.write(NEWLINE);
+            out.write(commit.getMessage());
+            out.write(NEWLINE);
+            out.write(NEWLINE);
+        } catch (IOException excp) {
+            return false;
+        }
+        if (remaining > 0) {
+            remaining -= 1;
+        }
+        printed += 1;
+        return printed % CHECK_EVERY != 0 || !closed();
+    }
+
+    /** Returns true iff the standard output has failed, as it does when
+     *  the reader at the other end of a pipe has gone away. */
+    private boolean closed() {
+        try {
+            out.flush();
+        } catch (IOException excp) {
+            return true;
+        }
+        return stdout.checkError();
+    }
+
+    /** Flushes what remains to be printed. */
+    private void finish() {
+        closed();
+    }
+}
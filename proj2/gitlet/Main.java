@@ -0,0 +1,104 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** Driver class for Gitlet, a subset of the Git version-control system.
+ *  @author Alec Luk
+ */
+public class Main {
+
+    /** Usage: java gitlet.Main ARGS, where ARGS contains
+     *  <COMMAND> <OPERAND1> <OPERAND2> ...
+     *  log and global-log may also be given "-n LIMIT", and are printed
+     *  by {@link LogWriter}.  gc collects garbage (see {@link Gc}).  A
+     *  command that fails with a GitletException prints its message.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            Utils.message("Please enter a command.");
+            System.exit(0);
+        }
+        try {
+            String firstArg = args[0];
+            switch (firstArg) {
+            case "init":
+                Repository.setupPersistence();
+                Repository.init();
+                break;
+            case "add":
+                checkGitletexists();
+                Staging.add(args[1]);
+                break;
+            case "commit":
+                checkGitletexists();
+                Repository.commit(args[1]);
+                break;
+            case "rm":
+                checkGitletexists();
+                Repository.rm(args[1]);
+                break;
+            case "log":
+            case "global-log":
+                LogWriter.main(args);
+                break;
+            case "find":
+                checkGitletexists();
+                MessageIndex.printFind(String.join(" ",
+                                                   Arrays.copyOfRange(args, 1, args.length)));
+                break;
+            case "status":
+                checkGitletexists();
+                Staging.status();
+                break;
+            case "checkout":
+                checkGitletexists();
+                if (args.length == 2) {
+                    Checkout.checkoutBranch(args[1]);
+                } else if (args.length == 3 && args[1].equals("--")) {
+                    Checkout.checkoutFile(null, args[2]);
+                } else if (args.length == 4 && args[2].equals("--")) {
+                    Checkout.checkoutFile(args[1], args[3]);
+                } else {
+                    Utils.message("Incorrect operands");
+                    System.exit(0);
+                }
+                break;
+            case "branch":
+                checkGitletexists();
+                Repository.branch(args[1]);
+                break;
+            case "rm-branch":
+                checkGitletexists();
+                Repository.rmBranch(args[1]);
+                break;
+            case "reset":
+                checkGitletexists();
+                Checkout.reset(args[1]);
+                break;
+            case "merge":
+                checkGitletexists();
+                Merge.merge(args[1]);
+                break;
+            case Gc.COMMAND:
+                Gc.main(Arrays.copyOfRange(args, 1, args.length));
+                break;
+            default:
+                checkGitletexists();
+                Utils.message("No command with that name exists.");
+                System.exit(0);
+            }
+        } catch (GitletException excp) {
+            Utils.message(excp.getMessage());
+            System.exit(0);
+        }
+    }
+
+    /** Exits with an error message unless the current directory holds a
+     *  Gitlet repository. */
+    public static void checkGitletexists() {
+        if (!Repository.GITLET_DIR.exists()) {
+            Utils.message("Not in an initialized Gitlet directory.");
+            System.exit(0);
+        }
+    }
+}
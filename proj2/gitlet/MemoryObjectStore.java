@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/** A store that keeps its objects in memory, for tests and for
+ *  commands that should leave nothing behind.  Install one with
+ *  {@link ObjectStore#install}; its objects last as long as the process.
+ *
+ *  @author Alec Luk
+ */
+class MemoryObjectStore implements ObjectStore {
+
+    /** Stored forms of the objects, by id. */
+    private final ConcurrentSkipListMap<String, byte[]> objects =
+        new ConcurrentSkipListMap<>();
+
+    @Override
+    public boolean contains(String id) {
+        return objects.containsKey(id);
+    }
+
+    @Override
+    public InputStream open(String id) throws IOException {
+        byte[] contents = objects.get(id);
+        if (contents == null) {
+            throw new FileNotFoundException("no object " + id);
+        }
+        return new ByteArrayInputStream(contents);
+    }
+
+    @Override
+    public void write(String id, byte[] contents) {
+        objects.put(id, contents.clone());
+    }
+
+    @Override
+    public Output create(String id) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        return new Output() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void commit() {
+                objects.put(id, out.toByteArray());
+            }
+        };
+    }
+
+    @Override
+    public boolean delete(String id) {
+        return objects.remove(id) != null;
+    }
+
+    @Override
+    public List<String> ids() {
+        return new ArrayList<>(objects.keySet());
+    }
+
+    @Override
+    public File looseFile(String id) {
+        return null;
+    }
+}
@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/** A store that keeps a repository's state in memory, to go with
+ *  {@link MemoryObjectStore}s.  It starts with no branches and "master"
+ *  as the current branch.  Like the journal of a {@link FileRefStore},
+ *  it saves only what a command changed since it loaded the state, by
+ *  {@link RefStore#apply}.
+ *
+ *  @author Alec Luk
+ */
+class MemoryRefStore implements RefStore {
+
+    /** Head commit ids by branch name. */
+    private final TreeMap<String, String> heads = new TreeMap<>();
+    /** Blob ids staged for addition, by file name. */
+    private final TreeMap<String, String> additions = new TreeMap<>();
+    /** Blob ids of files staged for removal, by file name. */
+    private final TreeMap<String, String> removals = new TreeMap<>();
+    /** The current branch. */
+    private String current = "master";
+    /** The state each thread last loaded or saved. */
+    private final ThreadLocal<Repository> loaded = new ThreadLocal<>();
+
+    @Override
+    public synchronized Map<String, String> heads() {
+        return new TreeMap<>(heads);
+    }
+
+    @Override
+    public synchronized void setHead(String branch, String id) {
+        put(heads, branch, id);
+    }
+
+    @Override
+    public synchronized boolean compareAndSetHead(String branch, String expected,
+                                                  String id) {
+        if (!Objects.equals(heads.get(branch), expected)) {
+            return false;
+        }
+        put(heads, branch, id);
+        return true;
+    }
+
+    @Override
+    public synchronized String currentBranch() {
+        return current;
+    }
+
+    @Override
+    public synchronized void setCurrentBranch(String branch) {
+        current = branch;
+    }
+
+    @Override
+    public synchronized Map<String, String> stagedAdditions() {
+        return new TreeMap<>(additions);
+    }
+
+    @Override
+    public synchronized Map<String, String> stagedRemovals() {
+        return new TreeMap<>(removals);
+    }
+
+    @Override
+    public synchronized void stageAddition(String name, String id) {
+        put(additions, name, id);
+    }
+
+    @Override
+    public synchronized void stageRemoval(String name, String id) {
+        put(removals, name, id);
+    }
+
+    @Override
+    public synchronized Repository load() {
+        Repository repo = new Repository();
+        Journal.map(repo, Journal.HEAD).putAll(heads);
+        Journal.map(repo, Journal.ADDITION).putAll(additions);
+        Journal.map(repo, Journal.REMOVAL).putAll(removals);
+        Journal.setCurrentBranch(repo, current);
+        loaded.set(Journal.copy(repo));
+        return repo;
+    }
+
+    @Override
+    public synchronized void save(Repository repo) {
+        apply(loaded.get() != null ? loaded.get() : new Repository(), repo);
+        loaded.set(Journal.copy(repo));
+    }
+
+    /** Maps KEY to VALUE in MAP, or removes KEY if VALUE is null. */
+    private static void put(Map<String, String> map, String key, String value) {
+        if (value == null) {
+            map.remove(key);
+        } else {
+            map.put(key, value);
+        }
+    }
+}
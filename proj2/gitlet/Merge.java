@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The merge command.  The split point comes from the
+ *  {@link CommitGraph}, which finds the latest common ancestor of the
+ *  two heads from the parent links and generation numbers in its side
+ *  file, without reading any commit, and which also answers whether one
+ *  head is an ancestor of the other.
+ *
+ *  The files of the merge commit are worked out from the file tables of
+ *  the split point and the two heads; the working directory is then
+ *  moved to them by {@link Checkout#switchFiles}, which writes only the
+ *  files that change and refuses to overwrite an untracked file before
+ *  changing anything.
+ *
+ *  @author Alec Luk
+ */
+class Merge {
+
+    /** Merges the head of BRANCH into the current branch. */
+    static void merge(String branch) {
+        RefStore refs = RefStore.current();
+        Repository repo = refs.load();
+        Map<String, String> heads = Journal.map(repo, Journal.HEAD);
+        String current = Journal.currentBranch(repo);
+        if (!Journal.map(repo, Journal.ADDITION).isEmpty()
+            || !Journal.map(repo, Journal.REMOVAL).isEmpty()) {
+            throw error("You have uncommitted changes.");
+        } else if (!heads.containsKey(branch)) {
+            throw error("A branch with that name does not exist.");
+        } else if (branch.equals(current)) {
+            throw error("Cannot merge a branch with itself.");
+        }
+        String headId = heads.get(current);
+        String givenId = heads.get(branch);
+        CommitGraph graph = CommitGraph.load();
+        if (graph.isAncestor(givenId, headId)) {
+            throw error("Given branch is an ancestor of the current branch.");
+        } else if (graph.isFastForward(headId, givenId)) {
+            Checkout.reset(givenId);
+            message("Current branch fast-forwarded.");
+            return;
+        }
+        Commit head = commitOf(headId);
+        Commit given = commitOf(givenId);
+        Commit split = commitOf(graph.mergeBase(headId, givenId));
+
+        Commit merged = new Commit("Merged " + branch + " into " + current + ".",
+                                   headId, givenId, current);
+        boolean conflict = mergeFiles(split.getBlobs(), head.getBlobs(), given.getBlobs(),
+                                      merged.getBlobs());
+        Checkout.switchFiles(head, merged);
+        String id = sha1(serialize(merged));
+        writeObject(ObjectPaths.of(COMMITS_DIR, id), merged);
+        heads.put(current, id);
+        refs.save(repo);
+        if (conflict) {
+            message("Encountered a merge conflict.");
+        }
+    }
+
+    /** Sets RESULT, which starts as the files of the current head HEAD,
+     *  to the merge of HEAD and GIVEN, whose split point has files
+     *  SPLIT.  A file changed on one side only is taken from that side;
+     *  a file changed differently on both is replaced by a conflict
+     *  file.  Returns true iff there was a conflict. */
+    private static boolean mergeFiles(Map<String, String> split, Map<String, String> head,
+                                      Map<String, String> given, HashMap<String, String> result) {
+        TreeSet<String> paths = new TreeSet<>(split.keySet());
+        paths.addAll(head.keySet());
+        paths.addAll(given.keySet());
+        boolean conflict = false;
+        for (String path : paths) {
+            String s = split.get(path);
+            String h = head.get(path);
+            String g = given.get(path);
+            if (equal(h, g) || equal(s, g)) {
+                continue;
+            } else if (equal(s, h)) {
+                if (g == null) {
+                    result.remove(path);
+                } else {
+                    result.put(path, g);
+                }
+            } else {
+                result.put(path, conflictBlob(h, g));
+                conflict = true;
+            }
+        }
+        return conflict;
+    }
+
+    /** Writes the blob of a conflict file holding the contents of blobs
+     *  CURRENT and GIVEN, either of which may be null for an absent file,
+     *  and returns its id. */
+    private static String conflictBlob(String current, String given) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(contentsOf(current));
+        out.writeBytes("=======\n".getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(contentsOf(given));
+        out.writeBytes(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+        byte[] contents = out.toByteArray();
+        String id = sha1(contents);
+        writeObject(ObjectPaths.of(BLOBS_DIR, id), contents);
+        return id;
+    }
+
+    /** Returns the contents of blob ID, or none if ID is null. */
+    private static byte[] contentsOf(String id) {
+        return id == null ? new byte[0] : readObject(ObjectPaths.of(BLOBS_DIR, id), byte[].class);
+    }
+
+    /** Returns true iff blob ids A and B are equal, or both null. */
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** Returns commit ID. */
+    private static Commit commitOf(String id) {
+        return readObject(ObjectPaths.of(COMMITS_DIR, id), Commit.class);
+    }
+}
@@ -0,0 +1,215 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** An inverted index on commit messages, so that find need not read
+ *  every commit.  Each commit is filed under the hash of its whole
+ *  message and under the hash of each word (token) in it.
+ *
+ *  The index is a hash table on disk: the directory INDEX_DIR holds one
+ *  bucket file per first byte of a key hash, and each bucket is an
+ *  append-only run of records, each a 20-byte key hash followed by a
+ *  20-byte commit id.  Looking up a key reads a single bucket.  Commits
+ *  are added as they are written; if the directory goes missing it is
+ *  rebuilt from all the commits.
+ *
+ *  @author Alec Luk
+ */
+class MessageIndex {
+
+    /** The directory holding the buckets. */
+    static final File INDEX_DIR = join(GITLET_DIR, "message-index");
+    /** Number of raw bytes in a hash. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+    /** Size of one record. */
+    private static final int RECORD_SIZE = 2 * ID_BYTES;
+
+    /** Adds commit ID, whose message is MESSAGE, to the index. */
+    static void add(String id, String message) {
+        if (!INDEX_DIR.isDirectory()) {
+            rebuild();
+            return;
+        }
+        append(id, message);
+    }
+
+    /** Rewrites the index from all the commits in the repository. */
+    static void rebuild() {
+        File temp = join(GITLET_DIR, "message-index.tmp");
+        if (temp.isDirectory()) {
+            for (File bucket : temp.listFiles()) {
+                bucket.delete();
+            }
+        }
+        temp.mkdir();
+        HashMap<String, ByteArrayOutputStream> buckets = new HashMap<>();
+        for (String id : plainFilenamesIn(COMMITS_DIR)) {
+            String message = readObject(ObjectPaths.of(COMMITS_DIR, id), Commit.class).getMessage();
+            for (String key : keysOf(message)) {
+                buckets.computeIfAbsent(key.substring(0, 2), k -> new ByteArrayOutputStream())
+                    .writeBytes(record(key, id));
+            }
+        }
+        for (Map.Entry<String, ByteArrayOutputStream> bucket : buckets.entrySet()) {
+            writeContents(join(temp, bucket.getKey()), bucket.getValue().toByteArray());
+        }
+        if (INDEX_DIR.isDirectory()) {
+            for (File bucket : INDEX_DIR.listFiles()) {
+                bucket.delete();
+            }
+            INDEX_DIR.delete();
+        }
+        if (!temp.renameTo(INDEX_DIR)) {
+            throw new IllegalArgumentException("could not write " + INDEX_DIR);
+        }
+    }
+
+    /** Files commit ID under the keys of MESSAGE. */
+    private static void append(String id, String message) {
+        for (String key : keysOf(message)) {
+            File bucket = join(INDEX_DIR, key.substring(0, 2));
+            try (FileChannel ch = FileChannel.open(bucket.toPath(), StandardOpenOption.CREATE,
+                                                   StandardOpenOption.WRITE,
+                                                   StandardOpenOption.APPEND)) {
+                ByteBuffer buf = ByteBuffer.wrap(record(key, id));
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns the ids of the commits whose message is exactly MESSAGE,
+     *  in lexicographic order. */
+    static List<String> find(String message) {
+        return new ArrayList<>(new TreeSet<>(lookup(messageKey(message))));
+    }
+
+    /** The find command: prints the ids of the commits whose message is
+     *  exactly MESSAGE, one per line, in lexicographic order. */
+    static void printFind(String message) {
+        List<String> ids = find(message);
+        if (ids.isEmpty()) {
+            throw error("Found no commit with that message.");
+        }
+        for (String id : ids) {
+            System.out.println(id);
+        }
+    }
+
+    /** Returns the ids of the commits with TOKEN among the words of their
+     *  messages, ignoring case, in lexicographic order. */
+    static List<String> findToken(String token) {
+        return new ArrayList<>(new TreeSet<>(lookup(tokenKey(token.toLowerCase()))));
+    }
+
+    /** Returns the ids of the commits whose message contains TEXT, in
+     *  lexicographic order.  Only commits filed under every word lying
+     *  wholly inside TEXT are read; if TEXT holds no whole word, every
+     *  commit is a candidate. */
+    static List<String> findContaining(String text) {
+        List<String> words = tokensOf(text);
+        /* The first and last words may be parts of longer words. */
+        if (!text.isEmpty() && Character.isLetterOrDigit(text.charAt(0)) && !words.isEmpty()) {
+            words.remove(0);
+        }
+        if (!text.isEmpty() && Character.isLetterOrDigit(text.charAt(text.length() - 1))
+            && !words.isEmpty()) {
+            words.remove(words.size() - 1);
+        }
+        TreeSet<String> candidates = null;
+        for (String word : words) {
+            TreeSet<String> hits = new TreeSet<>(lookup(tokenKey(word)));
+            if (candidates == null) {
+                candidates = hits;
+            } else {
+                candidates.retainAll(hits);
+            }
+        }
+        if (candidates == null) {
+            candidates = new TreeSet<>(plainFilenamesIn(COMMITS_DIR));
+        }
+        candidates.removeIf(id -> !messageOf(id).contains(text));
+        return new ArrayList<>(candidates);
+    }
+
+    /** Returns the ids of the commits filed under KEY. */
+    private static List<String> lookup(String key) {
+        if (!INDEX_DIR.isDirectory()) {
+            rebuild();
+        }
+        List<String> result = new ArrayList<>();
+        File bucket = join(INDEX_DIR, key.substring(0, 2));
+        if (!bucket.isFile()) {
+            return result;
+        }
+        byte[] contents = readContents(bucket);
+        byte[] raw = fromHex(key);
+        for (int start = 0; start + RECORD_SIZE <= contents.length; start += RECORD_SIZE) {
+            if (Arrays.equals(contents, start, start + ID_BYTES, raw, 0, ID_BYTES)) {
+                result.add(toHex(Arrays.copyOfRange(contents, start + ID_BYTES,
+                                                    start + RECORD_SIZE)));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the message of commit ID. */
+    private static String messageOf(String id) {
+        return readObject(ObjectPaths.of(COMMITS_DIR, id), Commit.class).getMessage();
+    }
+
+    /** Returns the keys MESSAGE is filed under. */
+    private static LinkedHashSet<String> keysOf(String message) {
+        LinkedHashSet<String> keys = new LinkedHashSet<>();
+        keys.add(messageKey(message));
+        for (String token : tokensOf(message)) {
+            keys.add(tokenKey(token));
+        }
+        return keys;
+    }
+
+    /** Returns the key of the whole message MESSAGE. */
+    private static String messageKey(String message) {
+        return sha1("message\0", message);
+    }
+
+    /** Returns the key of the word TOKEN. */
+    private static String tokenKey(String token) {
+        return sha1("token\0", token);
+    }
+
+    /** Returns the words of TEXT, in lower case and in order: its maximal
+     *  runs of letters and digits. */
+    static List<String> tokensOf(String text) {
+        List<String> result = new ArrayList<>();
+        for (String token : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                result.add(token);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the record filing commit ID under KEY. */
+    private static byte[] record(String key, String id) {
+        return ByteBuffer.allocate(RECORD_SIZE).put(fromHex(key)).put(fromHex(id)).array();
+    }
+}
@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static gitlet.Utils.*;
+
+/** The id of a stored object: a 160-bit SHA-1 hash, held in three
+ *  primitive fields rather than as 40 hex characters.  An ObjectId takes
+ *  about a third of the memory of the equivalent String, compares in
+ *  three steps instead of forty, and hashes in one.  Ids are immutable,
+ *  so they can be shared freely.  The hex form is what users see and
+ *  what names object files; the 20 raw bytes are what every binary
+ *  format stores.
+ *
+ *  @author Alec Luk
+ */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** Number of raw bytes in an id. */
+    static final int BYTES = UID_LENGTH / 2;
+
+    /** Bytes 0 to 7 of the hash, big-endian. */
+    private final long high;
+    /** Bytes 8 to 15 of the hash, big-endian. */
+    private final long middle;
+    /** Bytes 16 to 19 of the hash, big-endian. */
+    private final int low;
+
+    /** The id whose raw bytes are HIGH, MIDDLE and LOW in order. */
+    private ObjectId(long high, long middle, int low) {
+        this.high = high;
+        this.middle = middle;
+        this.low = low;
+    }
+
+    /** Returns the id written as the 40 hex digits HEX.  Throws
+     *  IllegalArgumentException if HEX is anything else. */
+    static ObjectId fromHex(String hex) {
+        if (hex.length() != UID_LENGTH) {
+            throw new IllegalArgumentException("not an object id: " + hex);
+        }
+        return new ObjectId(parseHex(hex, 0, 16), parseHex(hex, 16, 32),
+                            (int) parseHex(hex, 32, 40));
+    }
+
+    /** Returns the id written as HEX, or null if HEX is null. */
+    static ObjectId fromHexOrNull(String hex) {
+        return hex == null ? null : fromHex(hex);
+    }
+
+    /** Returns the id whose raw bytes are RAW[START .. START + BYTES). */
+    static ObjectId fromBytes(byte[] raw, int start) {
+        ByteBuffer buf = ByteBuffer.wrap(raw, start, BYTES);
+        return new ObjectId(buf.getLong(), buf.getLong(), buf.getInt());
+    }
+
+    /** Returns the id whose raw bytes are at absolute position START of
+     *  BUF. */
+    static ObjectId fromBuffer(ByteBuffer buf, int start) {
+        return new ObjectId(buf.getLong(start), buf.getLong(start + 8),
+                            buf.getInt(start + 16));
+    }
+
+    /** Returns the id whose raw bytes are read next from IN. */
+    static ObjectId read(DataInput in) throws IOException {
+        return new ObjectId(in.readLong(), in.readLong(), in.readInt());
+    }
+
+    /** Writes the raw bytes of this id to OUT. */
+    void write(DataOutput out) throws IOException {
+        out.writeLong(high);
+        out.writeLong(middle);
+        out.writeInt(low);
+    }
+
+    /** Puts the raw bytes of this id into BUF at its position. */
+    void put(ByteBuffer buf) {
+        buf.putLong(high).putLong(middle).putInt(low);
+    }
+
+    /** Returns the raw bytes of this id. */
+    byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(BYTES);
+        put(buf);
+        return buf.array();
+    }
+
+    /** Returns hex digit K of this id, from 0 to UID_LENGTH - 1, as a
+     *  value from 0 to 15. */
+    int digit(int k) {
+        long word = k < 16 ? high : k < 32 ? middle : (low & 0xffffffffL) << 32;
+        return (int) (word >>> (60 - 4 * (k % 16))) & 0xf;
+    }
+
+    /** Returns true iff the hex form of this id starts with PREFIX, in
+     *  either case. */
+    boolean startsWith(String prefix) {
+        if (prefix.length() > UID_LENGTH) {
+            return false;
+        }
+        for (int k = 0; k < prefix.length(); k += 1) {
+            if (Character.digit(prefix.charAt(k), 16) != digit(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Long.compareUnsigned(high, other.high);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(middle, other.middle);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(low, other.low);
+        }
+        return cmp;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return high == other.high && middle == other.middle && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        /* The bits of a hash are already uniformly distributed. */
+        return (int) (high >>> 32);
+    }
+
+    /** Returns the 40 hex digits of this id. */
+    @Override
+    public String toString() {
+        char[] hex = new char[UID_LENGTH];
+        for (int k = 0; k < UID_LENGTH; k += 1) {
+            hex[k] = Character.forDigit(digit(k), 16);
+        }
+        return new String(hex);
+    }
+
+    /** Returns the value of the hex digits HEX[START .. END), at most 16
+     *  of them.  Throws IllegalArgumentException if one is not a hex
+     *  digit. */
+    private static long parseHex(String hex, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i += 1) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("not an object id: " + hex);
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+}
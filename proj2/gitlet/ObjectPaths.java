@@ -0,0 +1,243 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Utils.*;
+
+/** Where loose objects live.  An object directory of .gitlet (commits,
+ *  blobs, trees, chunks, and the blob copies of {@link BlobLinks}) does
+ *  not hold its objects directly: each goes in a subdirectory named by
+ *  the first FANOUT hex digits of its id, under the rest of the id, as
+ *  in commits/3f/a09c....  No directory then has more than a few
+ *  hundred entries however many objects there are, so creating, finding
+ *  and listing objects stays fast on every filesystem.  A path built here
+ *  exists() if its object is stored anywhere, even in a pack.
+ *
+ *  Every path to an object is built by {@link #of}, which
+ *  {@link Utils#join} calls for an object directory and an id, and
+ *  objects are listed by {@link #idsIn}.  A repository from before this
+ *  layout is migrated the first time a command writes an object to it:
+ *  its loose objects are moved into place and LAYOUT_NAME is written.
+ *  Commands that only read find the objects where they are until then.
+ *
+ *  @author Alec Luk
+ */
+class ObjectPaths {
+
+    /** Number of hex digits of an id naming its subdirectory. */
+    static final int FANOUT = 2;
+    /** Names of the directories of .gitlet that are laid out this way. */
+    private static final Set<String> DIR_NAMES =
+        Set.of("commits", "blobs", "trees", "chunks", "links");
+    /** Name of the file in .gitlet recording that the repository uses
+     *  this layout. */
+    static final String LAYOUT_NAME = "layout";
+    /** Contents of the layout file. */
+    private static final String LAYOUT = "fanout " + FANOUT + "\n";
+
+    /** The .gitlet directories, by absolute path, whose layout is known
+     *  to be current, as a process such as the daemon may serve several
+     *  repositories. */
+    private static final Set<File> MIGRATED = ConcurrentHashMap.newKeySet();
+
+    /** Returns the file holding loose object ID of object directory DIR.
+     *  If ID is not a full id, it is simply joined to DIR. */
+    static File of(File dir, String id) {
+        if (!isId(id)) {
+            return new File(dir, id);
+        } else if (!isMigrated(dir)) {
+            return new ObjectFile(dir, dir, id, id);
+        }
+        return new ObjectFile(dir, new File(dir, id.substring(0, FANOUT)),
+                              id.substring(FANOUT), id);
+    }
+
+    /** The path of a loose object, which exists if the object is stored
+     *  at all, loose or packed, in the store of its directory.  Code that
+     *  tests object files with exists(), as Repository does, then finds
+     *  objects that gc has packed.  isFile() still tells whether the
+     *  object is loose. */
+    private static final class ObjectFile extends File {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The object directory. */
+        private final File dir;
+        /** The id of the object. */
+        private final String id;
+
+        /** The path NAME in PARENT of object ID of object directory DIR:
+         *  PARENT is DIR itself in the flat layout. */
+        ObjectFile(File dir, File parent, String name, String id) {
+            super(parent, name);
+            this.dir = dir;
+            this.id = id;
+        }
+
+        @Override
+        public boolean exists() {
+            return isFile() || ObjectStore.of(dir).contains(id);
+        }
+    }
+
+    /** Returns true iff DIR is an object directory of a .gitlet
+     *  directory. */
+    static boolean isObjectDir(File dir) {
+        if (!DIR_NAMES.contains(dir.getName())) {
+            return false;
+        }
+        File parent = dir.getAbsoluteFile().getParentFile();
+        return parent != null && parent.getName().equals(".gitlet");
+    }
+
+    /** Returns the id of the loose object held in FILE, or its name if it
+     *  is not in an object directory. */
+    static String idOf(File file) {
+        File parent = file.getParentFile();
+        if (parent != null && parent.getName().length() == FANOUT
+            && isObjectDir(parent.getAbsoluteFile().getParentFile())) {
+            return parent.getName() + file.getName();
+        }
+        return file.getName();
+    }
+
+    /** Returns the object directory of FILE, the directory FILE is in if
+     *  it is not in an object directory. */
+    static File dirOf(File file) {
+        File parent = file.getParentFile();
+        if (parent != null && parent.getName().length() == FANOUT
+            && isObjectDir(parent.getAbsoluteFile().getParentFile())) {
+            return parent.getParentFile();
+        }
+        return parent;
+    }
+
+    /** Returns the ids of the loose objects of object directory DIR, in
+     *  no particular order, or null if DIR does not exist. */
+    static List<String> idsIn(File dir) {
+        File[] subdirs = dir.listFiles(
+            (d, name) -> name.length() == FANOUT && Character.digit(name.charAt(0), 16) >= 0);
+        if (subdirs == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<>();
+        if (!isMigrated(dir)) {
+            for (String name : dir.list((d, name) -> isId(name))) {
+                result.add(name);
+            }
+        }
+        for (File subdir : subdirs) {
+            String[] names = subdir.list();
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                String id = subdir.getName() + name;
+                if (isId(id)) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns true iff the repository holding object directory DIR
+     *  uses the fan-out layout, or has no .gitlet directory yet. */
+    private static boolean isMigrated(File dir) {
+        File gitletDir = dir.getAbsoluteFile().getParentFile();
+        if (gitletDir != null && MIGRATED.contains(gitletDir)) {
+            return true;
+        }
+        if (gitletDir != null && new File(gitletDir, LAYOUT_NAME).isFile()) {
+            MIGRATED.add(gitletDir);
+            return true;
+        }
+        return gitletDir == null || !gitletDir.isDirectory();
+    }
+
+    /** Moves the loose objects of the repository holding object directory
+     *  DIR out of the flat layout, if that has not been done yet.  Only
+     *  commands that write objects call this; it takes the OBJECTS
+     *  {@link RepoLock}.  Until it has run, objects are found where the
+     *  flat layout has them. */
+    static void migrate(File dir) {
+        File gitletDir = dir.getAbsoluteFile().getParentFile();
+        if (gitletDir == null || MIGRATED.contains(gitletDir)
+            || !gitletDir.isDirectory()) {
+            return;
+        }
+        File layout = new File(gitletDir, LAYOUT_NAME);
+        if (!layout.isFile()) {
+            RepoLock lock = RepoLock.acquire(RepoLock.OBJECTS);
+            try (lock) {
+                if (!layout.isFile()) {
+                    for (String name : DIR_NAMES) {
+                        moveLoose(new File(gitletDir, name));
+                    }
+                    writeContents(layout, LAYOUT);
+                }
+            }
+        }
+        MIGRATED.add(gitletDir);
+    }
+
+    /** Deletes the subdirectories of object directory DIR left empty
+     *  once their objects are gone.  Call with the OBJECTS
+     *  {@link RepoLock} held. */
+    static void removeEmptyDirs(File dir) {
+        File[] subdirs = dir.listFiles(
+            (d, name) -> name.length() == FANOUT && Character.digit(name.charAt(0), 16) >= 0);
+        if (subdirs != null) {
+            for (File subdir : subdirs) {
+                /* Fails, as it should, unless the directory is empty. */
+                subdir.delete();
+            }
+        }
+    }
+
+    /** Moves every object lying directly in object directory DIR to its
+     *  place in the fan-out layout. */
+    private static void moveLoose(File dir) {
+        File[] flat = dir.listFiles((d, name) -> isId(name));
+        if (flat == null) {
+            return;
+        }
+        try {
+            for (File file : flat) {
+                String id = file.getName();
+                File subdir = new File(dir, id.substring(0, FANOUT));
+                subdir.mkdir();
+                File target = new File(subdir, id.substring(FANOUT));
+                if (target.exists()) {
+                    /* Ids name contents, so the copy in place is the same. */
+                    Files.delete(file.toPath());
+                } else {
+                    Files.move(file.toPath(), target.toPath(),
+                               StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff NAME is a full object id. */
+    static boolean isId(String name) {
+        if (name.length() != UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
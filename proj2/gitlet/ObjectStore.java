@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Storage for the objects of one object directory (commits, blobs,
+ *  trees or chunks), by id.  A store holds each object in its stored
+ *  form, the bytes that Utils reads back, possibly compressed, so it
+ *  needs to know nothing about what the objects are.
+ *
+ *  The object functions of {@link Utils} (readObject, writeObject,
+ *  objectExists, plainFilenamesIn and the blob functions) find the store
+ *  of an object from the directory of its file, so Repository and Commit
+ *  reach every object through a store.  By default each directory has a
+ *  {@link FileObjectStore}; {@link #install} puts another store, such as
+ *  a {@link MemoryObjectStore}, in its place.
+ *
+ *  @author Alec Luk
+ */
+interface ObjectStore {
+
+    /** Returns true iff this store holds object ID. */
+    boolean contains(String id);
+
+    /** Returns a stream over the stored form of object ID.  Throws
+     *  IOException if there is no such object. */
+    InputStream open(String id) throws IOException;
+
+    /** Stores CONTENTS as the stored form of object ID, replacing any
+     *  object stored under ID. */
+    void write(String id, byte[] contents);
+
+    /** Returns a stream that stores what is written to it as object ID
+     *  once it is committed. */
+    Output create(String id) throws IOException;
+
+    /** Removes object ID if this store holds it loose, and returns true
+     *  iff it did. */
+    boolean delete(String id);
+
+    /** Returns the ids of all objects in this store, in lexicographic
+     *  order. */
+    List<String> ids();
+
+    /** Returns the file holding the stored form of object ID by itself,
+     *  or null if it is not kept in a file of its own.  This lets blob
+     *  contents be copied between files by the kernel. */
+    File looseFile(String id);
+
+    /** A stream that stores what is written to it as an object once
+     *  {@link #commit} is called.  Closing it without committing, as
+     *  when writing the object fails partway, stores nothing, so a
+     *  truncated object is never stored under the id of the whole. */
+    abstract class Output extends OutputStream {
+
+        /** Stores what has been written as the object, and closes this
+         *  stream. */
+        public abstract void commit() throws IOException;
+
+        /** Returns a channel writing to this stream.  A store that writes
+         *  to a file returns the file's channel, so that data can be
+         *  copied into it from another file by the kernel. */
+        public WritableByteChannel channel() {
+            return Channels.newChannel(this);
+        }
+    }
+
+    /** The store of each object directory used so far, by absolute
+     *  path.  Use {@link #of} and {@link #install} rather than this. */
+    ConcurrentHashMap<File, ObjectStore> INSTALLED = new ConcurrentHashMap<>();
+
+    /** Returns the store of object directory DIR. */
+    static ObjectStore of(File dir) {
+        return INSTALLED.computeIfAbsent(dir.getAbsoluteFile(), FileObjectStore::new);
+    }
+
+    /** Makes STORE the store of object directory DIR. */
+    static void install(File dir, ObjectStore store) {
+        INSTALLED.put(dir.getAbsoluteFile(), store);
+    }
+}
@@ -0,0 +1,365 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import static gitlet.Utils.*;
+
+/** A pack of gitlet objects: an append-only data file holding the
+ *  contents of many objects back to back, plus a sorted index mapping
+ *  each object id to its place in the data file.
+ *
+ *  Objects are always written loose first (one file per object, as
+ *  before) and are later folded into a pack by {@link #repack(File)}.
+ *  Each object directory (commits, blobs) keeps its packs in a "pack"
+ *  subdirectory.  The index is memory-mapped, so finding an object is a
+ *  binary search rather than a directory lookup.
+ *
+ *  Index layout: the magic "GIDX", a version int, an entry count, a
+ *  256-entry fan-out table of cumulative counts by first id byte, and
+ *  then ENTRY_SIZE-byte entries (20-byte id, 8-byte offset, 4-byte
+ *  length) sorted by id.  Data layout: the magic "GPAK", a version int,
+ *  and then the object contents at the offsets recorded in the index.
+ *
+ *  @author Alec Luk
+ */
+class PackFile {
+
+    /** Name of the subdirectory of an object directory holding packs. */
+    static final String PACK_DIR_NAME = "pack";
+    /** Magic number at the start of an index file. */
+    private static final int IDX_MAGIC = 0x47494458;
+    /** Magic number at the start of a data file. */
+    private static final int PACK_MAGIC = 0x4750414b;
+    /** Current version of both file formats. */
+    private static final int VERSION = 1;
+    /** Number of raw bytes in an object id. */
+    static final int ID_BYTES = UID_LENGTH / 2;
+    /** Size of one index entry: id, offset and length. */
+    private static final int ENTRY_SIZE = ID_BYTES + 8 + 4;
+    /** Offset of the fan-out table in the index. */
+    private static final int FANOUT_START = 12;
+    /** Offset of the first index entry. */
+    private static final int ENTRIES_START = FANOUT_START + 256 * 4;
+    /** Size of the header of a data file. */
+    private static final int PACK_HEADER = 8;
+
+    /** Packs already opened in this process, by object directory. */
+    private static final HashMap<File, List<PackFile>> OPENED = new HashMap<>();
+    /** Modification time of the pack directory when OPENED was filled,
+     *  by object directory. */
+    private static final HashMap<File, Long> OPENED_TIME = new HashMap<>();
+
+    /** The data file of this pack. */
+    private final File data;
+    /** The memory-mapped index of this pack. */
+    private final MappedByteBuffer index;
+    /** Number of objects in this pack. */
+    private final int count;
+
+    /** Opens the pack whose index is IDXFILE. */
+    private PackFile(File idxFile) throws IOException {
+        String name = idxFile.getName();
+        this.data = new File(idxFile.getParentFile(),
+                name.substring(0, name.length() - ".idx".length()) + ".pack");
+        try (FileChannel ch = FileChannel.open(idxFile.toPath())) {
+            this.index = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (index.getInt(0) != IDX_MAGIC || index.getInt(4) != VERSION) {
+            throw new IOException("bad pack index " + idxFile);
+        }
+        this.count = index.getInt(8);
+    }
+
+    /** Returns the position in the index of the entry for ID, or -1 if
+     *  this pack does not contain it. */
+    private int find(byte[] id) {
+        int first = id[0] & 0xff;
+        int lo = first == 0 ? 0 : index.getInt(FANOUT_START + (first - 1) * 4);
+        int hi = index.getInt(FANOUT_START + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Compares the id of entry K with ID, as unsigned bytes. */
+    private int compareId(int k, byte[] id) {
+        int base = ENTRIES_START + k * ENTRY_SIZE;
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int cmp = Integer.compare(index.get(base + i) & 0xff, id[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the id of entry K as a hex string. */
+    private String idAt(int k) {
+        byte[] id = new byte[ID_BYTES];
+        index.get(ENTRIES_START + k * ENTRY_SIZE, id);
+        return toHex(id);
+    }
+
+    /** Returns the contents of entry K, read from the data file. */
+    private byte[] read(int k) throws IOException {
+        int base = ENTRIES_START + k * ENTRY_SIZE + ID_BYTES;
+        long offset = index.getLong(base);
+        int length = index.getInt(base + 8);
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        try (FileChannel ch = FileChannel.open(data.toPath())) {
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, offset + buf.position()) < 0) {
+                    throw new IOException("truncated pack " + data);
+                }
+            }
+        }
+        return buf.array();
+    }
+
+    /** Returns the contents of the object that would be stored loose at
+     *  FILE if it lives in one of the packs of its object directory, or
+     *  null if it is in no pack. */
+    static byte[] lookup(File file) {
+        String name = ObjectPaths.idOf(file);
+        if (!ObjectPaths.isId(name)) {
+            return null;
+        }
+        byte[] id = fromHex(name);
+        try {
+            for (PackFile pack : packsOf(ObjectPaths.dirOf(file))) {
+                int k = pack.find(id);
+                if (k >= 0) {
+                    return pack.read(k);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return null;
+    }
+
+    /** Returns true iff the object that would be stored loose at FILE is
+     *  in one of the packs of its object directory. */
+    static boolean contains(File file) {
+        String name = ObjectPaths.idOf(file);
+        if (!ObjectPaths.isId(name)) {
+            return false;
+        }
+        byte[] id = fromHex(name);
+        for (PackFile pack : packsOf(ObjectPaths.dirOf(file))) {
+            if (pack.find(id) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the ids of all objects in the packs of DIR. */
+    static List<String> packedNamesIn(File dir) {
+        ArrayList<String> result = new ArrayList<>();
+        for (PackFile pack : packsOf(dir)) {
+            for (int k = 0; k < pack.count; k += 1) {
+                result.add(pack.idAt(k));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the packs of object directory DIR, opening them if this
+     *  has not happened yet in this process or they have changed since,
+     *  as when the repository has been removed and made again. */
+    private static synchronized List<PackFile> packsOf(File dir) {
+        List<PackFile> packs = OPENED.get(dir);
+        File packDir = join(dir, PACK_DIR_NAME);
+        if (packs == null || OPENED_TIME.get(dir) != packDir.lastModified()) {
+            packs = new ArrayList<>();
+            File[] idxFiles = packDir.listFiles((d, name) -> name.endsWith(".idx"));
+            if (idxFiles != null) {
+                Arrays.sort(idxFiles);
+                try {
+                    for (File idx : idxFiles) {
+                        packs.add(new PackFile(idx));
+                    }
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+            OPENED.put(dir, packs);
+            OPENED_TIME.put(dir, packDir.lastModified());
+        }
+        return packs;
+    }
+
+    /** Forgets the packs opened for object directory DIR if its packs
+     *  have changed since, as when another process has repacked it, and
+     *  returns true iff it did. */
+    static synchronized boolean refresh(File dir) {
+        Long time = OPENED_TIME.get(dir);
+        if (time == null || time == join(dir, PACK_DIR_NAME).lastModified()) {
+            return false;
+        }
+        OPENED.remove(dir);
+        return true;
+    }
+
+    /** Folds all loose objects of object directory DIR into a new pack
+     *  and deletes the loose copies.  Objects that are already packed
+     *  are left where they are.  Returns the number of objects packed.
+     *  Takes the OBJECTS {@link RepoLock}. */
+    static int repack(File dir) {
+        RepoLock lock = RepoLock.acquire(RepoLock.OBJECTS);
+        try (lock) {
+            return repackLocked(dir);
+        }
+    }
+
+    /** Does the work of repack(DIR) once the lock is held. */
+    private static synchronized int repackLocked(File dir) {
+        TreeSet<String> loose = new TreeSet<>();
+        for (String name : plainFilenamesIn(dir)) {
+            if (ObjectPaths.isId(name) && !contains(ObjectPaths.of(dir, name))) {
+                loose.add(name);
+            }
+        }
+        if (loose.isEmpty()) {
+            return 0;
+        }
+        File packDir = join(dir, PACK_DIR_NAME);
+        packDir.mkdir();
+        String packName = "pack-" + sha1(String.join("", loose));
+        File dataFile = join(packDir, packName + ".pack");
+        File idxFile = join(packDir, packName + ".idx");
+        File idxTemp = join(packDir, packName + ".idx.tmp");
+
+        long[] offsets = new long[loose.size()];
+        int[] lengths = new int[loose.size()];
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(dataFile.toPath())))) {
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+                long offset = PACK_HEADER;
+                int k = 0;
+                for (String name : loose) {
+                    byte[] contents = Files.readAllBytes(ObjectPaths.of(dir, name).toPath());
+                    out.write(contents);
+                    offsets[k] = offset;
+                    lengths[k] = contents.length;
+                    offset += contents.length;
+                    k += 1;
+                }
+            }
+            int[] fanout = new int[256];
+            for (String name : loose) {
+                fanout[Integer.parseInt(name.substring(0, 2), 16)] += 1;
+            }
+            for (int i = 1; i < 256; i += 1) {
+                fanout[i] += fanout[i - 1];
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(idxTemp.toPath())))) {
+                out.writeInt(IDX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(loose.size());
+                for (int n : fanout) {
+                    out.writeInt(n);
+                }
+                int k = 0;
+                for (String name : loose) {
+                    out.write(fromHex(name));
+                    out.writeLong(offsets[k]);
+                    out.writeInt(lengths[k]);
+                    k += 1;
+                }
+            }
+            /* The index appears only once the data file is complete, so a
+             * reader never sees a pack that is half written. */
+            try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+                raf.getFD().sync();
+            }
+            if (!idxTemp.renameTo(idxFile)) {
+                throw new IOException("could not install " + idxFile);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        OPENED.remove(dir);
+        for (String name : loose) {
+            ObjectPaths.of(dir, name).delete();
+        }
+        ObjectPaths.removeEmptyDirs(dir);
+        return loose.size();
+    }
+
+    /** Drops the objects of the packs of object directory DIR for which
+     *  LIVE is false, and returns how many were dropped.  If any are, the
+     *  live objects are written out loose, the old packs are deleted, and
+     *  everything loose in DIR is folded into a new pack.  The live
+     *  objects are on disk at every step.  Takes the OBJECTS
+     *  {@link RepoLock}. */
+    static int prune(File dir, Predicate<String> live) {
+        RepoLock lock = RepoLock.acquire(RepoLock.OBJECTS);
+        try (lock) {
+            return pruneLocked(dir, live);
+        }
+    }
+
+    /** Does the work of prune(DIR, LIVE) once the lock is held. */
+    private static synchronized int pruneLocked(File dir, Predicate<String> live) {
+        List<String> packed = packedNamesIn(dir);
+        int dropped = 0;
+        for (String name : packed) {
+            if (!live.test(name)) {
+                dropped += 1;
+            }
+        }
+        if (dropped == 0) {
+            return 0;
+        }
+        FileObjectStore store = new FileObjectStore(dir);
+        for (String name : packed) {
+            File file = ObjectPaths.of(dir, name);
+            if (live.test(name) && !file.isFile()) {
+                store.write(name, lookup(file));
+            }
+        }
+        /* The survivors must be on disk before the packs holding them go. */
+        FileObjectStore.syncWritten();
+        File[] idxFiles = join(dir, PACK_DIR_NAME).listFiles(
+            (d, name) -> name.endsWith(".idx"));
+        OPENED.remove(dir);
+        for (File idx : idxFiles) {
+            String name = idx.getName();
+            File data = join(dir, PACK_DIR_NAME,
+                             name.substring(0, name.length() - ".idx".length()) + ".pack");
+            if (!idx.delete() || !data.delete()) {
+                throw new IllegalArgumentException("could not delete " + data);
+            }
+        }
+        repackLocked(dir);
+        return dropped;
+    }
+}
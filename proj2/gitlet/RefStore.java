@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Utils.*;
+
+/** Storage for the mutable state of a repository: the head commit of
+ *  each branch, the current branch, and the staging area.  Objects never
+ *  change once written and live in {@link ObjectStore}s; everything that
+ *  does change lives here.
+ *
+ *  By default the state is the serialized Repository in .gitlet, read
+ *  and written by a {@link FileRefStore}; {@link #install} puts another
+ *  store, such as a {@link MemoryRefStore}, in its place.  Repository
+ *  itself reads and writes its state file with Utils.readObject and
+ *  writeObject, which hand it to {@link #current}.
+ *
+ *  @author Alec Luk
+ */
+interface RefStore {
+
+    /** Returns the id of the head commit of each branch, by branch
+     *  name. */
+    Map<String, String> heads();
+
+    /** Makes the commit ID the head of BRANCH, or removes BRANCH if ID is
+     *  null. */
+    void setHead(String branch, String id);
+
+    /** Makes the commit ID the head of BRANCH, or removes BRANCH if ID is
+     *  null, but only if its head is now EXPECTED (null for a branch that
+     *  does not exist).  Returns true iff it did. */
+    boolean compareAndSetHead(String branch, String expected, String id);
+
+    /** Returns the name of the current branch. */
+    String currentBranch();
+
+    /** Makes BRANCH the current branch. */
+    void setCurrentBranch(String branch);
+
+    /** Returns the ids of the blobs staged for addition, by file name. */
+    Map<String, String> stagedAdditions();
+
+    /** Returns the ids of the blobs of the files staged for removal, by
+     *  file name. */
+    Map<String, String> stagedRemovals();
+
+    /** Stages the blob ID of file NAME for addition, or unstages NAME if
+     *  ID is null. */
+    void stageAddition(String name, String id);
+
+    /** Stages file NAME, whose blob is ID, for removal, or unstages NAME
+     *  if ID is null. */
+    void stageRemoval(String name, String id);
+
+    /** Returns the whole state as a new Repository, which is how
+     *  Repository reads it at the start of a command.  This thread's next
+     *  save is compared against it. */
+    Repository load();
+
+    /** Makes REPO, loaded by this thread and then changed, the state,
+     *  changing only what this thread changed since it loaded it.  Throws
+     *  a GitletException, changing nothing, if a branch it changed has
+     *  been changed since by another command. */
+    void save(Repository repo);
+
+    /** Changes the state by what differs between BEFORE, a state loaded
+     *  earlier, and AFTER, the same state changed by a command, as save
+     *  does.  Each changed branch is moved with compareAndSetHead, and
+     *  those already moved are moved back if a later one has been
+     *  changed since BEFORE by another command, so that a GitletException
+     *  leaves every branch as it was.  A store that must make the whole
+     *  change at once, for other processes, saves some other way. */
+    default void apply(Repository before, Repository after) {
+        Map<String, String> oldHeads = Journal.map(before, Journal.HEAD);
+        Map<String, String> newHeads = Journal.map(after, Journal.HEAD);
+        String oldCurrent = Journal.currentBranch(before);
+        String newCurrent = Journal.currentBranch(after);
+        boolean switched = !Objects.equals(oldCurrent, newCurrent);
+        if (switched && !Objects.equals(currentBranch(), oldCurrent)) {
+            throw error("The current branch was changed by another command.");
+        }
+        List<String> moved = new ArrayList<>();
+        for (String branch : changed(oldHeads, newHeads)) {
+            if (!compareAndSetHead(branch, oldHeads.get(branch), newHeads.get(branch))) {
+                for (String done : moved) {
+                    compareAndSetHead(done, newHeads.get(done), oldHeads.get(done));
+                }
+                throw error("Branch " + branch + " was changed by another command.");
+            }
+            moved.add(branch);
+        }
+        if (switched) {
+            setCurrentBranch(newCurrent);
+        }
+        Map<String, String> additions = Journal.map(after, Journal.ADDITION);
+        for (String name : changed(Journal.map(before, Journal.ADDITION), additions)) {
+            stageAddition(name, additions.get(name));
+        }
+        Map<String, String> removals = Journal.map(after, Journal.REMOVAL);
+        for (String name : changed(Journal.map(before, Journal.REMOVAL), removals)) {
+            stageRemoval(name, removals.get(name));
+        }
+    }
+
+    /** Returns the keys whose values differ between BEFORE and AFTER. */
+    private static TreeSet<String> changed(Map<String, String> before,
+                                           Map<String, String> after) {
+        TreeSet<String> result = new TreeSet<>(before.keySet());
+        result.addAll(after.keySet());
+        result.removeIf(key -> Objects.equals(before.get(key), after.get(key)));
+        return result;
+    }
+
+    /** The store of each repository state file used so far, by absolute
+     *  path.  Use {@link #current} and {@link #install} rather than
+     *  this. */
+    ConcurrentHashMap<File, RefStore> INSTALLED = new ConcurrentHashMap<>();
+
+    /** Returns the store of the repository in the current directory. */
+    static RefStore current() {
+        return INSTALLED.computeIfAbsent(Repository.REPO_DIR.getAbsoluteFile(),
+                                         FileRefStore::new);
+    }
+
+    /** Makes STORE the store of the repository in the current
+     *  directory. */
+    static void install(RefStore store) {
+        INSTALLED.put(Repository.REPO_DIR.getAbsoluteFile(), store);
+    }
+}
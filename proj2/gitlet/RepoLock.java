@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** A lock on one part of a repository, held against other threads of
+ *  this process and against other gitlet processes.  Each part has a
+ *  lock file in .gitlet, locked with FileChannel.lock while the lock is
+ *  held.  A thread may take a lock it already holds; the file stays
+ *  locked until the thread has released it as often as it took it.
+ *
+ *  REFS guards the branch heads and the current branch, INDEX the
+ *  staging area, the stat cache and the list of recent blobs, and
+ *  OBJECTS the removal of objects by repacking and garbage collection.
+ *  Writing an object takes no lock (see {@link FileObjectStore}), and
+ *  nothing that only reads takes one.
+ *  Take REFS before INDEX, and both before OBJECTS.
+ *
+ *  Use a lock as a resource:
+ *      try (RepoLock refs = RepoLock.acquire(RepoLock.REFS)) { ... }
+ *
+ *  @author Alec Luk
+ */
+class RepoLock implements AutoCloseable {
+
+    /** Names of the locks. */
+    static final String REFS = "refs", INDEX = "index", OBJECTS = "objects";
+
+    /** Locks used so far in this process, by lock file. */
+    private static final ConcurrentHashMap<File, RepoLock> LOCKS =
+        new ConcurrentHashMap<>();
+
+    /** The lock file. */
+    private final File file;
+    /** Excludes the other threads of this process. */
+    private final ReentrantLock local = new ReentrantLock();
+    /** The lock file, open while the lock is held. */
+    private FileChannel channel;
+    /** The lock on the lock file, while the lock is held. */
+    private FileLock held;
+
+    /** The lock whose lock file is FILE. */
+    private RepoLock(File file) {
+        this.file = file;
+    }
+
+    /** Returns the lock NAME of the current repository, waiting until no
+     *  other thread or process holds it. */
+    static RepoLock acquire(String name) {
+        RepoLock lock = of(name);
+        lock.lock(true);
+        return lock;
+    }
+
+    /** Returns the lock NAME of the current repository if no other thread
+     *  or process holds it, and otherwise null at once. */
+    static RepoLock tryAcquire(String name) {
+        RepoLock lock = of(name);
+        return lock.lock(false) ? lock : null;
+    }
+
+    /** Returns the lock NAME of the current repository. */
+    private static RepoLock of(String name) {
+        return LOCKS.computeIfAbsent(join(GITLET_DIR, name + ".lock").getAbsoluteFile(),
+                                     RepoLock::new);
+    }
+
+    /** Takes this lock, waiting for it iff WAIT, and returns true iff it
+     *  was taken. */
+    private boolean lock(boolean wait) {
+        if (wait) {
+            local.lock();
+        } else if (!local.tryLock()) {
+            return false;
+        }
+        if (local.getHoldCount() > 1) {
+            return true;
+        }
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE);
+            held = wait ? channel.lock() : channel.tryLock();
+            if (held == null) {
+                channel.close();
+                channel = null;
+                local.unlock();
+                return false;
+            }
+            return true;
+        } catch (IOException excp) {
+            local.unlock();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Releases this lock once. */
+    @Override
+    public void close() {
+        try {
+            if (local.getHoldCount() == 1) {
+                held.release();
+                channel.close();
+                held = null;
+                channel = null;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            local.unlock();
+        }
+    }
+}
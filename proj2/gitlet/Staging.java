@@ -0,0 +1,113 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The commands that compare the working directory with the staging
+ *  area: add and status.  Files are hashed through the {@link StatIndex},
+ *  so a file whose stat data have not changed since it was last hashed
+ *  is not read again; others are hashed by streaming them through
+ *  {@link Utils#sha1(File)}.  Blobs are written by
+ *  {@link Utils#writeBlob}, so a large file is never held in memory.
+ *  Files may be in subdirectories, named by their relative paths.
+ *
+ *  @author Alec Luk
+ */
+class Staging {
+
+    /** Stages the file NAME, a path relative to the working directory,
+     *  for addition.  A file that is the same as in the head commit is
+     *  unstaged instead, and staging a file cancels its removal. */
+    static void add(String name) {
+        File file = join(CWD, name);
+        if (!file.isFile()) {
+            throw error("File does not exist.");
+        }
+        RefStore refs = RefStore.current();
+        Repository repo = refs.load();
+        Map<String, String> additions = Journal.map(repo, Journal.ADDITION);
+        Journal.map(repo, Journal.REMOVAL).remove(name);
+        StatIndex index = StatIndex.load();
+        try {
+            String id = index.blobId(name, file);
+            if (id.equals(headCommit(repo).getBlobs().get(name))) {
+                additions.remove(name);
+            } else {
+                writeBlob(ObjectPaths.of(BLOBS_DIR, id), file);
+                additions.put(name, id);
+            }
+        } finally {
+            index.save();
+        }
+        refs.save(repo);
+    }
+
+    /** Prints the branches, the files staged for addition and for
+     *  removal, the tracked files changed or deleted in the working
+     *  directory without being staged, and the files there that are
+     *  neither staged nor tracked, each section followed by a blank
+     *  line.  The working directory is walked with its subdirectories by
+     *  {@link WorkTree}, which hashes files as it finds them. */
+    static void status() {
+        Repository repo = RefStore.current().load();
+        String current = Journal.currentBranch(repo);
+        Map<String, String> additions = Journal.map(repo, Journal.ADDITION);
+        Map<String, String> removals = Journal.map(repo, Journal.REMOVAL);
+        System.out.println("=== Branches ===");
+        for (String branch : new TreeSet<>(Journal.map(repo, Journal.HEAD).keySet())) {
+            System.out.println(branch.equals(current) ? "*" + branch : branch);
+        }
+        printSection("Staged Files", new TreeSet<>(additions.keySet()));
+        printSection("Removed Files", new TreeSet<>(removals.keySet()));
+        TreeSet<String> modified = new TreeSet<>();
+        TreeMap<String, String> expected = new TreeMap<>(headCommit(repo).getBlobs());
+        expected.putAll(additions);
+        expected.keySet().removeAll(removals.keySet());
+        StatIndex index = StatIndex.load();
+        TreeMap<String, String> found;
+        try {
+            found = new WorkTree(CWD).blobIds(index);
+            for (Map.Entry<String, String> entry : expected.entrySet()) {
+                String path = entry.getKey();
+                File file = join(CWD, path);
+                String id = found.get(path);
+                if (id == null && file.isFile()) {
+                    /* Tracked, but ignored by .gitletignore. */
+                    id = index.blobId(path, file);
+                }
+                if (id == null) {
+                    modified.add(path + " (deleted)");
+                } else if (!id.equals(entry.getValue())) {
+                    modified.add(path + " (modified)");
+                }
+            }
+        } finally {
+            index.save();
+        }
+        found.keySet().removeAll(expected.keySet());
+        printSection("Modifications Not Staged For Commit", modified);
+        printSection("Untracked Files", found.keySet());
+        System.out.println();
+    }
+
+    /** Prints the blank line ending the previous section, and then the
+     *  status section TITLE listing LINES. */
+    private static void printSection(String title, Iterable<String> lines) {
+        System.out.println();
+        System.out.println("=== " + title + " ===");
+        for (String line : lines) {
+            System.out.println(line);
+        }
+    }
+
+    /** Returns the head commit of the current branch of REPO. */
+    static Commit headCommit(Repository repo) {
+        String id = Journal.map(repo, Journal.HEAD).get(Journal.currentBranch(repo));
+        return readObject(ObjectPaths.of(COMMITS_DIR, id), Commit.class);
+    }
+}
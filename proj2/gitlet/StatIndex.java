@@ -0,0 +1,216 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The stat cache: for each tracked path, the size, modification time
+ *  and file key (inode) the file had when it was last hashed, next to
+ *  the resulting blob id.  A file whose stat data still matches is known
+ *  to have the same blob id, so add and status can skip reading and
+ *  hashing it.
+ *
+ *  A file changed within the timestamp granularity of the moment it was
+ *  hashed could keep the same stat data while its contents differ (the
+ *  "racy" case).  Entries whose modification time falls within
+ *  RACY_WINDOW of the moment the cache is saved are therefore written
+ *  with an impossible size, so that they never match and the file is
+ *  hashed again the next time.
+ *
+ *  @author Alec Luk
+ */
+class StatIndex {
+
+    /** The file holding the stat cache. */
+    static final File INDEX_FILE = join(GITLET_DIR, "index");
+    /** Magic number at the start of the file. */
+    private static final int MAGIC = 0x47535449;
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+    /** Modification times this close to a save, in nanoseconds, are not
+     *  trusted.  This covers filesystems with coarse timestamps. */
+    private static final long RACY_WINDOW = TimeUnit.SECONDS.toNanos(2);
+    /** Size recorded for an entry that must be re-hashed. */
+    private static final long SMUDGED = -1;
+
+    /** The cached stat data of one path. */
+    private static class Entry {
+        /** Size of the file in bytes. */
+        private long size;
+        /** Modification time of the file in nanoseconds since the epoch. */
+        private long mtime;
+        /** The file key (device and inode), or "" if there is none. */
+        private String fileKey;
+        /** The blob id of the file's contents. */
+        private ObjectId blobId;
+
+        /** Returns true iff ATTRS describe the file this entry was taken
+         *  from, unchanged. */
+        boolean matches(BasicFileAttributes attrs) {
+            return size != SMUDGED && size == attrs.size()
+                && mtime == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                && fileKey.equals(keyOf(attrs));
+        }
+    }
+
+    /** Entries by path relative to the working directory.  Several
+     *  threads may hash through this cache at once. */
+    private final ConcurrentSkipListMap<String, Entry> entries =
+        new ConcurrentSkipListMap<>();
+    /** True iff ENTRIES differ from the saved file. */
+    private volatile boolean dirty;
+
+    /** Returns the stat cache of the current repository, which is empty
+     *  if it has not been saved yet or cannot be read. */
+    static StatIndex load() {
+        StatIndex index = new StatIndex();
+        if (!INDEX_FILE.isFile()) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                 Files.newInputStream(INDEX_FILE.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return index;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i += 1) {
+                String path = readString(in);
+                Entry entry = new Entry();
+                entry.size = in.readLong();
+                entry.mtime = in.readLong();
+                entry.fileKey = readString(in);
+                entry.blobId = ObjectId.read(in);
+                index.entries.put(path, entry);
+            }
+        } catch (IOException excp) {
+            /* The cache is only an optimization; start over. */
+            index.entries.clear();
+            index.dirty = true;
+        }
+        return index;
+    }
+
+    /** Returns the blob id of the contents of FILE, whose path relative
+     *  to the working directory is PATH.  The contents are read and
+     *  hashed only if FILE's stat data differ from the cached entry. */
+    String blobId(String path, File file) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Entry entry = entries.get(path);
+        if (entry != null && entry.matches(attrs)) {
+            return entry.blobId.toString();
+        }
+        String id = sha1(file);
+        record(path, attrs, ObjectId.fromHex(id));
+        return id;
+    }
+
+    /** Returns true iff FILE, at PATH, is known from its stat data alone
+     *  to have contents with blob id BLOBID.  A false result means only
+     *  that the file must be hashed to find out. */
+    boolean isUnchanged(String path, File file, ObjectId blobId) {
+        Entry entry = entries.get(path);
+        if (entry == null || !entry.blobId.equals(blobId)) {
+            return false;
+        }
+        try {
+            return entry.matches(Files.readAttributes(file.toPath(),
+                                                      BasicFileAttributes.class));
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Records that FILE, at PATH, has just been written with the
+     *  contents of blob BLOBID, so that it need not be hashed again. */
+    void update(String path, File file, ObjectId blobId) {
+        try {
+            record(path, Files.readAttributes(file.toPath(), BasicFileAttributes.class),
+                   blobId);
+        } catch (IOException excp) {
+            remove(path);
+        }
+    }
+
+    /** Records that the file at PATH, with stat data ATTRS, has blob id
+     *  ID. */
+    private void record(String path, BasicFileAttributes attrs, ObjectId id) {
+        Entry entry = new Entry();
+        entry.size = attrs.size();
+        entry.mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        entry.fileKey = keyOf(attrs);
+        entry.blobId = id;
+        entries.put(path, entry);
+        dirty = true;
+    }
+
+    /** Forgets the entry for PATH, as when it stops being tracked. */
+    void remove(String path) {
+        if (entries.remove(path) != null) {
+            dirty = true;
+        }
+    }
+
+    /** Writes this cache back to INDEX_FILE if it has changed.  The cache
+     *  only saves work, so if another command holds the INDEX
+     *  {@link RepoLock}, it is not written rather than waited for. */
+    synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        try (RepoLock lock = RepoLock.tryAcquire(RepoLock.INDEX)) {
+            if (lock != null) {
+                write();
+            }
+        }
+    }
+
+    /** Writes this cache to INDEX_FILE. */
+    private void write() {
+        long racyAfter = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())
+            - RACY_WINDOW;
+        File temp = join(GITLET_DIR, "index.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                 Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                writeString(out, e.getKey());
+                out.writeLong(entry.mtime >= racyAfter ? SMUDGED : entry.size);
+                out.writeLong(entry.mtime);
+                writeString(out, entry.fileKey);
+                entry.blobId.write(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!temp.renameTo(INDEX_FILE)) {
+            throw new IllegalArgumentException("could not write " + INDEX_FILE);
+        }
+        dirty = false;
+    }
+
+    /** Returns the file key in ATTRS as a string, or "" if the filesystem
+     *  has none. */
+    private static String keyOf(BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        return key == null ? "" : key.toString();
+    }
+}
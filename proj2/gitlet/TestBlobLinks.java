@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests checkout by hard link.
+ *
+ *  @author Alec Luk
+ */
+public class TestBlobLinks {
+
+    /** The blob id of "text". */
+    private static final String BLOB = Utils.sha1("text");
+
+    @Before
+    public void setUp() throws Exception {
+        freshRepo();
+        commitFile("a.txt", "text", "add a");
+    }
+
+    /** Returns the number of links to FILE. */
+    private static int links(File file) throws Exception {
+        return (Integer) Files.getAttribute(file.toPath(), "unix:nlink");
+    }
+
+    /** A linked file is an ordinary writable file with a current time. */
+    @Test
+    public void testModeAndTime() throws Exception {
+        File dest = Utils.join(Repository.CWD, "b.txt");
+        long before = System.currentTimeMillis() - 2_000;
+        BlobLinks.link(BLOB, dest);
+        assertEquals("text", readFile("b.txt"));
+        assertTrue(dest.canWrite());
+        assertTrue(dest.lastModified() >= before);
+        assertEquals(2, links(dest));
+        dest.delete();
+    }
+
+    /** A second file with the same contents is copied, not linked, so
+     *  writing one leaves the other alone. */
+    @Test
+    public void testOneLinkPerCopy() throws Exception {
+        File b = Utils.join(Repository.CWD, "b.txt");
+        File c = Utils.join(Repository.CWD, "c.txt");
+        BlobLinks.link(BLOB, b);
+        BlobLinks.link(BLOB, c);
+        assertEquals(1, links(c));
+        Utils.writeContents(b, "changed");
+        assertEquals("text", Utils.readContentsAsString(c));
+        b.delete();
+        c.delete();
+    }
+
+    /** A copy written through its link is written afresh. */
+    @Test
+    public void testChangedCopyReplaced() throws Exception {
+        File b = Utils.join(Repository.CWD, "b.txt");
+        BlobLinks.link(BLOB, b);
+        Utils.writeContents(b, "changed");
+        b.delete();
+        BlobLinks.link(BLOB, b);
+        assertEquals("text", Utils.readContentsAsString(b));
+        b.delete();
+    }
+
+    /** With checkout.hardlinks on, checking a file out links it to the
+     *  copy of its blob; an unchanged file is left as it is. */
+    @Test
+    public void testCheckoutCommandLinks() throws Exception {
+        Utils.writeContents(Config.CONFIG_FILE, BlobLinks.LINKS_KEY + "=true\n");
+        File a = Utils.join(Repository.CWD, "a.txt");
+        writeFile("a.txt", "changed");
+        assertEquals("", gitlet("checkout", "--", "a.txt"));
+        assertEquals("text", readFile("a.txt"));
+        assertEquals(2, links(a));
+        a.delete();
+        assertEquals("", gitlet("checkout", head(), "--", "a.txt"));
+        assertEquals("text", readFile("a.txt"));
+        assertEquals(2, links(a));
+    }
+}
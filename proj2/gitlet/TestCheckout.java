@@ -0,0 +1,212 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests checkout driven by the difference of two commits' trees.
+ *
+ *  @author Alec Luk
+ */
+public class TestCheckout {
+
+    /** Number of files in the first commit. */
+    private static final int FILES = 20;
+
+    /** The first commit, with files dir/f0 ... dir/f19, same/s.txt and
+     *  top.txt. */
+    private Commit first;
+    /** The second commit, which changes dir/f3, removes dir/f5 and adds
+     *  new/g.txt. */
+    private Commit second;
+
+    @Before
+    public void setUp() {
+        freshRepo();
+        for (int i = 0; i < FILES; i += 1) {
+            writeFile("dir/f" + i, "v1 " + i);
+            gitlet("add", "dir/f" + i);
+        }
+        writeFile("same/s.txt", "s");
+        gitlet("add", "same/s.txt");
+        first = commit(commitFile("top.txt", "top", "first"));
+        writeFile("dir/f3", "v2");
+        gitlet("add", "dir/f3");
+        gitlet("rm", "dir/f5");
+        second = commit(commitFile("new/g.txt", "g", "second"));
+    }
+
+    /** Returns commit ID. */
+    private static Commit commit(String id) {
+        return Utils.readObject(ObjectPaths.of(Repository.COMMITS_DIR, id), Commit.class);
+    }
+
+    /** Only the paths whose blobs differ are in the difference. */
+    @Test
+    public void testDiff() {
+        TreeMap<String, ObjectId[]> changes = Checkout.diff(second, first);
+        assertEquals(Set.of("dir/f3", "dir/f5", "new/g.txt"), changes.keySet());
+        assertEquals(ObjectId.fromHex(Utils.sha1("v2")), changes.get("dir/f3")[0]);
+        assertEquals(ObjectId.fromHex(Utils.sha1("v1 3")), changes.get("dir/f3")[1]);
+        assertNull(changes.get("dir/f5")[0]);
+        assertNull(changes.get("new/g.txt")[1]);
+    }
+
+    /** A directory that is the same in both commits is not read. */
+    @Test
+    public void testSameDirectoryNotRead() {
+        Set<ObjectId> shared = new HashSet<>();
+        Tree.forEachEntry(first.getTreeId(), blob -> { }, shared::add);
+        Set<ObjectId> changed = new HashSet<>();
+        Tree.forEachEntry(second.getTreeId(), blob -> { }, changed::add);
+        shared.retainAll(changed);
+        assertEquals(1, shared.size());
+        for (ObjectId id : shared) {
+            assertTrue(ObjectStore.of(Tree.TREES_DIR).delete(id.toString()));
+        }
+        assertEquals(3, Checkout.diff(first, second).size());
+    }
+
+    /** Switching writes the changed files only, and leaves the others
+     *  untouched. */
+    @Test
+    public void testSwitchTouchesChangesOnly() {
+        File untouched = Utils.join(Repository.CWD, "dir/f0");
+        long old = System.currentTimeMillis() - 60_000;
+        untouched.setLastModified(old);
+
+        Checkout.switchFiles(second, first);
+        assertEquals("v1 3", readFile("dir/f3"));
+        assertEquals("v1 5", readFile("dir/f5"));
+        assertNull(readFile("new/g.txt"));
+        assertEquals(old, untouched.lastModified());
+
+        Checkout.switchFiles(first, second);
+        assertEquals("v2", readFile("dir/f3"));
+        assertNull(readFile("dir/f5"));
+        assertEquals("g", readFile("new/g.txt"));
+        assertEquals(old, untouched.lastModified());
+    }
+
+    /** The checkout and reset commands switch only the changed files,
+     *  move the branch and clear the staging area. */
+    @Test
+    public void testCommandsTouchChangesOnly() {
+        String secondId = head();
+        File untouched = Utils.join(Repository.CWD, "dir/f0");
+        long old = System.currentTimeMillis() - 60_000;
+        untouched.setLastModified(old);
+        gitlet("branch", "other");
+        gitlet("reset", Staging.headCommit(RefStore.current().load()).getParent1());
+        assertEquals("v1 3", readFile("dir/f3"));
+        assertEquals("v1 5", readFile("dir/f5"));
+        assertNull(readFile("new/g.txt"));
+        assertEquals(old, untouched.lastModified());
+
+        writeFile("top.txt", "staged");
+        gitlet("add", "top.txt");
+        assertEquals("", gitlet("checkout", "other"));
+        assertEquals(secondId, head());
+        assertEquals("g", readFile("new/g.txt"));
+        assertEquals(old, untouched.lastModified());
+        assertTrue(RefStore.current().stagedAdditions().isEmpty());
+        assertEquals("No need to checkout the current branch.\n", gitlet("checkout", "other"));
+        assertEquals("No such branch exists.\n", gitlet("checkout", "none"));
+    }
+
+    /** With checkout.verbose on, the commands report what they wrote. */
+    @Test
+    public void testVerbose() {
+        Utils.writeContents(Config.CONFIG_FILE, Checkout.VERBOSE_KEY + "=true\n"
+                            + Checkout.THREADS_KEY + "=2\n");
+        String report = gitlet("reset", Staging.headCommit(RefStore.current().load())
+                               .getParent1());
+        assertTrue(report, report.matches(
+            "Wrote 2 files \\(.* MB\\) in .* s: .* files/s, .* MB/s\\.\n"));
+        assertEquals("v1 5", readFile("dir/f5"));
+    }
+
+    /** A file the change would create is not written over if untracked. */
+    @Test
+    public void testUntrackedInTheWay() {
+        Checkout.switchFiles(second, first);
+        writeFile("new/g.txt", "mine");
+        try {
+            Checkout.switchFiles(first, second);
+            fail("overwrote an untracked file");
+        } catch (GitletException excp) {
+            assertEquals("There is an untracked file in the way;"
+                         + " delete it, or add and commit it first.", excp.getMessage());
+        }
+        assertEquals("mine", readFile("new/g.txt"));
+        assertEquals("v1 3", readFile("dir/f3"));
+    }
+
+    /** Sets the number of threads writing files to THREADS. */
+    private static void setThreads(String threads) {
+        Utils.writeContents(Config.CONFIG_FILE, Checkout.THREADS_KEY + "=" + threads + "\n");
+    }
+
+    /** Returns a commit after SECOND in which every dir/fI has changed. */
+    private static Commit changeAll() {
+        for (int i = 0; i < FILES; i += 1) {
+            writeFile("dir/f" + i, "v3 " + i);
+            gitlet("add", "dir/f" + i);
+        }
+        gitlet("commit", "third");
+        return commit(head());
+    }
+
+    /** Many files are written by the pool, each with its own contents. */
+    @Test
+    public void testPoolWritesAll() {
+        setThreads("4");
+        Commit third = changeAll();
+        Checkout.switchFiles(third, first);
+        for (int i = 0; i < FILES; i += 1) {
+            assertEquals("v1 " + i, readFile("dir/f" + i));
+        }
+        Checkout.switchFiles(first, third);
+        for (int i = 0; i < FILES; i += 1) {
+            assertEquals("v3 " + i, readFile("dir/f" + i));
+        }
+    }
+
+    /** A failed write is reported once all writes have stopped, with the
+     *  number of files written. */
+    @Test
+    public void testPoolReportsFailure() {
+        setThreads("4");
+        Commit third = changeAll();
+        File blocked = Utils.join(Repository.CWD, "dir/f7");
+        blocked.delete();
+        writeFile("dir/f7/inside", "x");
+        try {
+            Checkout.switchFiles(third, first);
+            fail("wrote over a directory");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(excp.getMessage(), excp.getMessage().startsWith("could not write dir/f7 ("));
+            assertTrue(excp.getMessage(), excp.getMessage().matches(
+                ".*; \\d+ of " + FILES + " files were written"));
+        }
+        assertTrue(blocked.isDirectory());
+    }
+
+    @Test
+    public void testBadThreads() {
+        setThreads("0");
+        try {
+            Checkout.switchFiles(second, first);
+            fail("used 0 threads");
+        } catch (GitletException excp) {
+            assertEquals("Bad value for checkout.threads in config: 0", excp.getMessage());
+        }
+    }
+}
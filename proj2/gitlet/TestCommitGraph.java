@@ -0,0 +1,84 @@
+package gitlet;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests the commit graph kept beside the commits.
+ *
+ *  @author Alec Luk
+ */
+public class TestCommitGraph {
+
+    /** The initial commit. */
+    private String initial;
+    /** The commit the branches split at. */
+    private String split;
+    /** The head of master before the merge. */
+    private String master;
+    /** The head of the branch "other". */
+    private String other;
+    /** The merge of other into master. */
+    private String merged;
+
+    @Before
+    /** Makes a repository whose master and "other" branches split after
+     *  one commit, with other then merged into master. */
+    public void setUp() {
+        freshRepo();
+        initial = head();
+        split = commitFile("a.txt", "a", "add a");
+        gitlet("branch", "other");
+        master = commitFile("a.txt", "a2", "change a");
+        gitlet("checkout", "other");
+        other = commitFile("b.txt", "b", "add b");
+        gitlet("checkout", "master");
+        gitlet("merge", "other");
+        merged = head();
+    }
+
+    @Test
+    public void testMergeBase() {
+        CommitGraph graph = CommitGraph.load();
+        assertEquals(split, graph.mergeBase(master, other));
+        assertEquals(split, graph.mergeBase(other, master));
+        assertEquals(other, graph.mergeBase(merged, other));
+        assertEquals(master, graph.mergeBase(master, master));
+    }
+
+    @Test
+    public void testIsAncestor() {
+        CommitGraph graph = CommitGraph.load();
+        assertTrue(graph.isAncestor(initial, merged));
+        assertTrue(graph.isAncestor(other, merged));
+        assertTrue(graph.isAncestor(split, other));
+        assertFalse(graph.isAncestor(other, master));
+        assertFalse(graph.isAncestor(merged, split));
+        assertTrue(graph.isFastForward(other, merged));
+    }
+
+    /** Every commit is appended once, after its parents. */
+    @Test
+    public void testAppend() {
+        List<String> ancestors = CommitGraph.load().ancestors(merged);
+        assertEquals(List.of(merged, master, split, initial, other), ancestors);
+        CommitGraph.append(master, Utils.readObject(
+            ObjectPaths.of(Repository.COMMITS_DIR, master), Commit.class));
+        assertEquals(ancestors, CommitGraph.load().ancestors(merged));
+    }
+
+    /** A commit whose parent is not stored is recorded without it. */
+    @Test
+    public void testRebuildMissingParent() {
+        ObjectStore.of(Repository.COMMITS_DIR).delete(split);
+        CommitGraph.rebuild();
+        CommitGraph graph = CommitGraph.load();
+        assertEquals(-1, graph.indexOf(split));
+        assertEquals(List.of(master), graph.ancestors(master));
+        assertFalse(graph.isAncestor(initial, other));
+    }
+}
@@ -0,0 +1,60 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests blobs stored as deltas, and their bases' survival of garbage
+ *  collection.
+ *
+ *  @author Alec Luk
+ */
+public class TestDelta {
+
+    /** The first version of the file. */
+    private static final String FIRST = "line one of the file\n".repeat(20);
+    /** The second version, close enough to the first to be a delta. */
+    private static final String SECOND = FIRST + "one more line\n";
+
+    @Before
+    public void setUp() {
+        freshRepo();
+    }
+
+    /** Returns the stored blob whose contents are TEXT. */
+    private static File blob(String text) {
+        return ObjectPaths.of(Repository.BLOBS_DIR, Utils.sha1(text));
+    }
+
+    /** The base of a new delta blob outlives collection even when nothing
+     *  reachable uses it and it is older than the grace period. */
+    @Test
+    public void testBaseOfGracedDeltaKept() {
+        writeFile("f.txt", FIRST);
+        gitlet("add", "f.txt");
+        /* As a command that has yet to stage it would. */
+        Utils.writeObject(blob(SECOND), SECOND.getBytes(StandardCharsets.UTF_8));
+        assertEquals(ObjectId.fromHex(Utils.sha1(FIRST)), Delta.baseOf(blob(SECOND)));
+        writeFile("f.txt", "short");
+        gitlet("add", "f.txt");
+        Utils.looseObject(blob(FIRST)).setLastModified(System.currentTimeMillis() - 3_600_000);
+
+        gitlet("gc");
+        assertTrue(Utils.objectExists(blob(FIRST)));
+        assertEquals(SECOND, new String(Utils.readObject(blob(SECOND), byte[].class),
+                                        StandardCharsets.UTF_8));
+    }
+
+    /** The recorded depth of a delta never passes what its byte holds. */
+    @Test
+    public void testDepthClamped() {
+        byte[] base = FIRST.getBytes(StandardCharsets.UTF_8);
+        byte[] delta = Delta.encode(Utils.sha1(FIRST), 1000, base, base);
+        assertEquals(Delta.MAX_DEPTH, delta[4 + 1 + Utils.UID_LENGTH / 2] & 0xff);
+    }
+}
@@ -0,0 +1,77 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests garbage collection, and the commands that use what it leaves.
+ *
+ *  @author Alec Luk
+ */
+public class TestGc {
+
+    /** The first commit made. */
+    private String first;
+    /** The commit after it. */
+    private String second;
+
+    @Before
+    public void setUp() {
+        freshRepo();
+        first = commitFile("a.txt", "one", "first");
+        second = commitFile("a.txt", "two", "second");
+        gitlet("gc");
+    }
+
+    /** Commits that gc has packed are still found. */
+    @Test
+    public void testPackedCommitsFound() {
+        assertFalse(ObjectPaths.of(Repository.COMMITS_DIR, first).isFile());
+        assertTrue(ObjectPaths.of(Repository.COMMITS_DIR, first).exists());
+        assertTrue(gitlet("log").contains("commit " + first));
+    }
+
+    /** Files of packed commits can be checked out, by full or short id. */
+    @Test
+    public void testCheckoutAfterGc() {
+        assertEquals("", gitlet("checkout", first, "--", "a.txt"));
+        assertEquals("one", readFile("a.txt"));
+        assertEquals("", gitlet("checkout", second.substring(0, 8), "--", "a.txt"));
+        assertEquals("two", readFile("a.txt"));
+    }
+
+    /** Packed commits can be reset to. */
+    @Test
+    public void testResetAfterGc() {
+        assertEquals("", gitlet("reset", first));
+        assertEquals(first, head());
+        assertEquals("one", readFile("a.txt"));
+        gitlet("reset", second);
+        assertEquals("two", readFile("a.txt"));
+    }
+
+    /** A packed commit that nothing reaches is swept, and cannot be reset
+     *  to. */
+    @Test
+    public void testUnreachableSwept() {
+        gitlet("reset", first);
+        String report = gitlet("gc");
+        assertTrue(report, report.startsWith("Removed 1 commit, "));
+        assertFalse(ObjectPaths.of(Repository.COMMITS_DIR, second).exists());
+        assertEquals("No commit with that id exists.\n", gitlet("reset", second));
+        assertEquals(first, head());
+    }
+
+    /** Packing leaves no empty fan-out directories behind. */
+    @Test
+    public void testNoEmptyDirs() {
+        for (File dir : new File[] {Repository.COMMITS_DIR, Tree.TREES_DIR}) {
+            String[] names = dir.list();
+            assertArrayEquals(new String[] {PackFile.PACK_DIR_NAME}, names);
+        }
+    }
+}
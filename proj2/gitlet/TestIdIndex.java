@@ -0,0 +1,92 @@
+package gitlet;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests the index of commit ids.
+ *
+ *  @author Alec Luk
+ */
+public class TestIdIndex {
+
+    /** The initial commit. */
+    private String initial;
+    /** A commit after it. */
+    private String second;
+
+    @Before
+    public void setUp() {
+        freshRepo();
+        initial = head();
+        second = commitFile("a.txt", "a", "add a");
+    }
+
+    /** Ids are found by full id and by prefix, whether logged or merged
+     *  into the base. */
+    @Test
+    public void testContainsAndResolve() {
+        IdIndex index = IdIndex.load();
+        assertTrue(index.contains(initial));
+        assertTrue(index.contains(second));
+        assertFalse(index.contains(Utils.sha1("none")));
+        assertEquals(second, index.resolve(second.substring(0, 8)));
+        IdIndex.rebuild();
+        assertEquals(0, IdIndex.LOG_FILE.length());
+        index = IdIndex.load();
+        assertEquals(initial, index.resolve(initial.substring(0, 6).toUpperCase()));
+        assertEquals(List.of(), index.matching("xyz", 2));
+    }
+
+    /** A prefix of more than one id is ambiguous. */
+    @Test
+    public void testAmbiguous() {
+        String one = "ab" + "0".repeat(37) + "1";
+        String two = "ab" + "0".repeat(37) + "2";
+        IdIndex.add(one);
+        IdIndex.add(two);
+        IdIndex index = IdIndex.load();
+        assertEquals(one, index.resolve(one.substring(0, 39) + "1"));
+        try {
+            index.resolve("ab00");
+            fail("resolved an ambiguous id");
+        } catch (GitletException excp) {
+            assertEquals("Commit id ab00 is ambiguous.", excp.getMessage());
+        }
+    }
+
+    /** A long log is merged into the base, with an id added twice kept
+     *  once. */
+    @Test
+    public void testMerge() {
+        IdIndex.add(second);
+        for (int i = 0; i < 300; i += 1) {
+            IdIndex.add(Utils.sha1("id " + i));
+        }
+        assertTrue(IdIndex.LOG_FILE.length() < 300 * (Utils.UID_LENGTH / 2));
+        IdIndex index = IdIndex.load();
+        for (int i = 0; i < 300; i += 1) {
+            assertTrue(index.contains(Utils.sha1("id " + i)));
+        }
+        assertEquals(List.of(second), index.matching(second, 2));
+        assertTrue(index.contains(initial));
+    }
+
+    /** checkout and reset take a commit id abbreviated to a prefix, and
+     *  reset moves the branch to the full id. */
+    @Test
+    public void testCommandsResolve() {
+        writeFile("a.txt", "changed");
+        gitlet("checkout", second.substring(0, 6), "--", "a.txt");
+        assertEquals("a", readFile("a.txt"));
+        assertEquals("No commit with that id exists.\n",
+                     gitlet("checkout", "fffffff", "--", "a.txt"));
+        gitlet("reset", initial.substring(0, 8));
+        assertEquals(initial, head());
+        assertNull(readFile("a.txt"));
+    }
+}
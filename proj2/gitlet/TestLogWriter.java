@@ -0,0 +1,57 @@
+package gitlet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests log and global-log as LogWriter prints them.
+ *
+ *  @author Alec Luk
+ */
+public class TestLogWriter {
+
+    /** The initial commit. */
+    private String initial;
+    /** The commit after it. */
+    private String second;
+
+    @Before
+    public void setUp() {
+        freshRepo();
+        initial = head();
+        second = commitFile("a.txt", "a", "add a");
+    }
+
+    /** Returns the log entry of commit ID. */
+    private static String entry(String id) {
+        Commit commit = Utils.readObject(ObjectPaths.of(Repository.COMMITS_DIR, id),
+                                         Commit.class);
+        return "===\ncommit " + id + "\nDate: " + commit.gettimeStamp() + "\n"
+            + commit.getMessage() + "\n\n";
+    }
+
+    /** The history is printed newest first, as Repository prints it. */
+    @Test
+    public void testLog() {
+        assertEquals(entry(second) + entry(initial), gitlet("log"));
+        assertEquals(entry(second), gitlet("log", "-n", "1"));
+        assertEquals("", gitlet("log", "-n", "0"));
+    }
+
+    /** Every commit is printed in the order of their ids. */
+    @Test
+    public void testGlobalLog() {
+        String expected = initial.compareTo(second) < 0
+            ? entry(initial) + entry(second) : entry(second) + entry(initial);
+        assertEquals(expected, gitlet("global-log"));
+        assertEquals(1, gitlet("global-log", "-n", "1").split("===").length - 1);
+    }
+
+    @Test
+    public void testBadOperands() {
+        assertEquals("Incorrect operands.\n", gitlet("log", "-n"));
+        assertEquals("Incorrect operands.\n", gitlet("global-log", "-n", "-1"));
+    }
+}
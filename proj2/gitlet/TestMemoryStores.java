@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests commands run on a repository whose objects and state are kept
+ *  in memory.
+ *
+ *  @author Alec Luk
+ */
+public class TestMemoryStores {
+
+    /** The object directories given memory stores. */
+    private static final File[] OBJECT_DIRS = {
+        Repository.COMMITS_DIR, Repository.BLOBS_DIR, Tree.TREES_DIR, Chunks.CHUNKS_DIR
+    };
+
+    /** The ref store in use. */
+    private MemoryRefStore refs;
+
+    @Before
+    public void setUp() {
+        freshRepo();
+        deleteTree(Repository.GITLET_DIR);
+        for (File dir : OBJECT_DIRS) {
+            ObjectStore.install(dir, new MemoryObjectStore());
+        }
+        refs = new MemoryRefStore();
+        RefStore.install(refs);
+        gitlet("init");
+    }
+
+    /** Commits, branches and checkouts work, and nothing of them is
+     *  written to .gitlet. */
+    @Test
+    public void testCommands() {
+        String first = commitFile("a.txt", "one", "first");
+        assertEquals(first, refs.heads().get("master"));
+        gitlet("branch", "other");
+        commitFile("a.txt", "two", "second");
+        gitlet("checkout", "other");
+        assertEquals("other", refs.currentBranch());
+        assertEquals("one", readFile("a.txt"));
+        gitlet("checkout", "master");
+        assertEquals("two", readFile("a.txt"));
+        assertEquals("", gitlet("checkout", first, "--", "a.txt"));
+        assertEquals("one", readFile("a.txt"));
+        assertTrue(gitlet("log").contains("commit " + first));
+        assertTrue(gitlet("status").contains("*master"));
+
+        assertFalse(Repository.REPO_DIR.exists());
+        for (File dir : OBJECT_DIRS) {
+            String[] names = dir.list();
+            assertTrue(dir + " holds files", names == null || names.length == 0);
+        }
+    }
+
+    /** A save that would undo another command's change to a branch is
+     *  refused. */
+    @Test
+    public void testConflictingSave() {
+        Repository mine = refs.load();
+        String before = refs.heads().get("master");
+        refs.setHead("master", null);
+        refs.setHead("master", before);
+        Journal.map(mine, Journal.ADDITION).put("x.txt", Utils.sha1("x"));
+        refs.save(mine);
+        assertEquals(Utils.sha1("x"), refs.stagedAdditions().get("x.txt"));
+
+        mine = refs.load();
+        refs.setHead("master", Utils.sha1("elsewhere"));
+        Journal.map(mine, Journal.HEAD).put("master", Utils.sha1("mine"));
+        try {
+            refs.save(mine);
+            fail("saved over another command's change");
+        } catch (GitletException excp) {
+            assertEquals("Branch master was changed by another command.", excp.getMessage());
+        }
+        assertEquals(Utils.sha1("elsewhere"), refs.heads().get("master"));
+    }
+
+    /** A refused save leaves the branches it could have moved as they
+     *  were. */
+    @Test
+    public void testRefusedSaveMovesNothing() {
+        String before = refs.heads().get("master");
+        Repository mine = refs.load();
+        refs.setHead("zeta", Utils.sha1("elsewhere"));
+        Journal.map(mine, Journal.HEAD).put("alpha", Utils.sha1("mine"));
+        Journal.map(mine, Journal.HEAD).put("master", Utils.sha1("mine"));
+        Journal.map(mine, Journal.HEAD).put("zeta", Utils.sha1("mine"));
+        try {
+            refs.save(mine);
+            fail("saved over another command's change");
+        } catch (GitletException excp) {
+            assertEquals("Branch zeta was changed by another command.", excp.getMessage());
+        }
+        assertNull(refs.heads().get("alpha"));
+        assertEquals(before, refs.heads().get("master"));
+        assertEquals(Utils.sha1("elsewhere"), refs.heads().get("zeta"));
+    }
+}
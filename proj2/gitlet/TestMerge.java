@@ -0,0 +1,87 @@
+package gitlet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests merge through the commit graph.
+ *
+ *  @author Alec Luk
+ */
+public class TestMerge {
+
+    /** The commit the two branches split at, with a.txt, b.txt and
+     *  c.txt. */
+    private String split;
+
+    @Before
+    public void setUp() {
+        freshRepo();
+        writeFile("a.txt", "a");
+        gitlet("add", "a.txt");
+        writeFile("b.txt", "b");
+        gitlet("add", "b.txt");
+        split = commitFile("c.txt", "c", "split");
+        gitlet("branch", "other");
+    }
+
+    /** Changes on one side are taken, and a file changed differently on
+     *  both sides becomes a conflict file in a commit with two parents. */
+    @Test
+    public void testMerge() {
+        writeFile("a.txt", "a master");
+        gitlet("add", "a.txt");
+        commitFile("c.txt", "c master", "master");
+        String master = head();
+        gitlet("checkout", "other");
+        writeFile("b.txt", "b other");
+        gitlet("add", "b.txt");
+        gitlet("rm", "a.txt");
+        String other = commitFile("c.txt", "c other", "other");
+        gitlet("checkout", "master");
+
+        assertEquals("Encountered a merge conflict.\n", gitlet("merge", "other"));
+        assertEquals("<<<<<<< HEAD\na master=======\n>>>>>>>\n", readFile("a.txt"));
+        assertEquals("b other", readFile("b.txt"));
+        assertEquals("<<<<<<< HEAD\nc master=======\nc other>>>>>>>\n", readFile("c.txt"));
+        Commit merged = Utils.readObject(ObjectPaths.of(Repository.COMMITS_DIR, head()),
+                                         Commit.class);
+        assertEquals("Merged other into master.", merged.getMessage());
+        assertEquals(master, merged.getParent1());
+        assertEquals(other, merged.getParent2());
+        assertEquals(split, CommitGraph.load().mergeBase(master, other));
+        assertTrue(RefStore.current().stagedAdditions().isEmpty());
+    }
+
+    /** A given branch behind the current one changes nothing, and one
+     *  ahead of it is fast-forwarded to. */
+    @Test
+    public void testAncestors() {
+        String ahead = commitFile("d.txt", "d", "ahead");
+        assertEquals("Given branch is an ancestor of the current branch.\n",
+                     gitlet("merge", "other"));
+        assertEquals(ahead, head());
+
+        gitlet("checkout", "other");
+        assertEquals("Current branch fast-forwarded.\n", gitlet("merge", "master"));
+        assertEquals(ahead, head());
+        assertEquals("d", readFile("d.txt"));
+    }
+
+    /** A merge that would overwrite an untracked file changes nothing. */
+    @Test
+    public void testUntracked() {
+        commitFile("d.txt", "d", "master");
+        gitlet("checkout", "other");
+        commitFile("e.txt", "e", "other");
+        String other = head();
+        writeFile("d.txt", "untracked");
+        assertEquals("There is an untracked file in the way;"
+                     + " delete it, or add and commit it first.\n",
+                     gitlet("merge", "master"));
+        assertEquals(other, head());
+        assertEquals("untracked", readFile("d.txt"));
+    }
+}
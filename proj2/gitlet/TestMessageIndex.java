@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests the index on commit messages.
+ *
+ *  @author Alec Luk
+ */
+public class TestMessageIndex {
+
+    /** A commit with message "Fix the parser". */
+    private String fix;
+    /** A commit with message "Add parser tests". */
+    private String tests;
+    /** A second commit with message "Fix the parser". */
+    private String again;
+
+    @Before
+    public void setUp() {
+        freshRepo();
+        fix = commitFile("a.txt", "a", "Fix the parser");
+        tests = commitFile("b.txt", "b", "Add parser tests");
+        again = commitFile("a.txt", "a2", "Fix the parser");
+    }
+
+    /** Whole messages are found exactly. */
+    @Test
+    public void testFind() {
+        assertEquals(sorted(fix, again), MessageIndex.find("Fix the parser"));
+        assertEquals(List.of(tests), MessageIndex.find("Add parser tests"));
+        assertEquals(List.of(), MessageIndex.find("Fix the"));
+    }
+
+    /** Words are found whatever their case. */
+    @Test
+    public void testFindToken() {
+        assertEquals(sorted(fix, tests, again), MessageIndex.findToken("PARSER"));
+        assertEquals(List.of(tests), MessageIndex.findToken("tests"));
+        assertEquals(List.of(), MessageIndex.findToken("pars"));
+    }
+
+    /** Text is found inside messages, partial words included. */
+    @Test
+    public void testFindContaining() {
+        assertEquals(sorted(fix, again), MessageIndex.findContaining("x the pars"));
+        assertEquals(List.of(tests), MessageIndex.findContaining("parser t"));
+        assertEquals(sorted(fix, tests, again, initialCommit()),
+                     MessageIndex.findContaining(""));
+    }
+
+    /** The find command prints the matching ids one per line, or says
+     *  that there are none. */
+    @Test
+    public void testFindCommand() {
+        assertEquals(String.join("\n", sorted(fix, again)) + "\n",
+                     gitlet("find", "Fix the parser"));
+        assertEquals("Found no commit with that message.\n", gitlet("find", "Fix the"));
+    }
+
+    /** A missing index is rebuilt from the commits. */
+    @Test
+    public void testRebuild() {
+        deleteTree(MessageIndex.INDEX_DIR);
+        assertEquals(sorted(fix, again), MessageIndex.find("Fix the parser"));
+        assertTrue(MessageIndex.INDEX_DIR.isDirectory());
+    }
+
+    /** Returns the id of the initial commit. */
+    private String initialCommit() {
+        return CommitGraph.load().ancestors(fix).get(1);
+    }
+
+    /** Returns IDS in lexicographic order. */
+    private static List<String> sorted(String... ids) {
+        return List.of(ids).stream().sorted().toList();
+    }
+}
@@ -0,0 +1,118 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests the commands on the staging area.
+ *
+ *  @author Alec Luk
+ */
+public class TestStaging {
+
+    @Before
+    public void setUp() {
+        freshRepo();
+        commitFile("a.txt", "one", "first");
+    }
+
+    /** A file too large for a delta is streamed into its blob, and comes
+     *  back whole. */
+    @Test
+    public void testAddLargeFile() {
+        byte[] contents = new byte[Delta.MAX_SIZE + 1000];
+        Arrays.fill(contents, (byte) 'x');
+        contents[contents.length - 1] = 'y';
+        File file = Utils.join(Repository.CWD, "big.bin");
+        writeFile("big.bin", "");
+        Utils.writeContents(file, contents);
+        String id = Utils.sha1(contents);
+        gitlet("add", "big.bin");
+        assertEquals(id, RefStore.current().stagedAdditions().get("big.bin"));
+        assertTrue(Utils.objectExists(ObjectPaths.of(Repository.BLOBS_DIR, id)));
+
+        gitlet("commit", "big");
+        file.delete();
+        gitlet("checkout", "--", "big.bin");
+        assertArrayEquals(contents, Utils.readContents(file));
+    }
+
+    /** Adding a file back to its committed contents unstages it, and
+     *  adding a file cancels its removal. */
+    @Test
+    public void testAddUnstages() {
+        writeFile("a.txt", "two");
+        gitlet("add", "a.txt");
+        assertEquals(Utils.sha1("two"), RefStore.current().stagedAdditions().get("a.txt"));
+        writeFile("a.txt", "one");
+        gitlet("add", "a.txt");
+        assertTrue(RefStore.current().stagedAdditions().isEmpty());
+
+        gitlet("rm", "a.txt");
+        assertNull(readFile("a.txt"));
+        writeFile("a.txt", "one");
+        gitlet("add", "a.txt");
+        assertTrue(RefStore.current().stagedRemovals().isEmpty());
+    }
+
+    /** add records the stat data of the file it hashed, so that the
+     *  next command need not hash it again. */
+    @Test
+    public void testAddFillsStatIndex() {
+        writeFile("b.txt", "b");
+        File file = Utils.join(Repository.CWD, "b.txt");
+        file.setLastModified(System.currentTimeMillis() - 60_000);
+        gitlet("add", "b.txt");
+        assertTrue(StatIndex.load().isUnchanged("b.txt", file,
+                                                ObjectId.fromHex(Utils.sha1("b"))));
+    }
+
+    /** status lists tracked and staged files changed or deleted without
+     *  being staged. */
+    @Test
+    public void testStatusModifications() {
+        commitFile("b.txt", "b", "second");
+        writeFile("a.txt", "changed");
+        writeFile("c.txt", "c");
+        gitlet("add", "c.txt");
+        writeFile("c.txt", "c again");
+        Utils.join(Repository.CWD, "b.txt").delete();
+        assertEquals("=== Branches ===\n*master\n\n"
+                     + "=== Staged Files ===\nc.txt\n\n"
+                     + "=== Removed Files ===\n\n"
+                     + "=== Modifications Not Staged For Commit ===\n"
+                     + "a.txt (modified)\nb.txt (deleted)\nc.txt (modified)\n\n"
+                     + "=== Untracked Files ===\n\n",
+                     gitlet("status"));
+    }
+
+    /** status lists the files in the working tree, subdirectories
+     *  included, that are neither tracked nor staged, less those that
+     *  are ignored, and a removed file that is back. */
+    @Test
+    public void testStatusUntracked() {
+        writeFile("dir/sub/d.txt", "d");
+        writeFile("dir/skip.log", "log");
+        writeFile(WorkTree.IGNORE_FILE, "*.log\n");
+        gitlet("add", WorkTree.IGNORE_FILE);
+        gitlet("rm", "a.txt");
+        writeFile("a.txt", "one");
+        assertEquals("=== Branches ===\n*master\n\n"
+                     + "=== Staged Files ===\n" + WorkTree.IGNORE_FILE + "\n\n"
+                     + "=== Removed Files ===\na.txt\n\n"
+                     + "=== Modifications Not Staged For Commit ===\n\n"
+                     + "=== Untracked Files ===\na.txt\ndir/sub/d.txt\n\n",
+                     gitlet("status"));
+    }
+
+    /** A missing file cannot be added. */
+    @Test
+    public void testAddMissing() {
+        assertEquals("File does not exist.\n", gitlet("add", "nothing.txt"));
+    }
+}
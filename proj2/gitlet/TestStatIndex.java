@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests the stat cache, and in particular its handling of files changed
+ *  too soon after they were hashed to be told apart by their stat data.
+ *
+ *  @author Alec Luk
+ */
+public class TestStatIndex {
+
+    /** The file the tests hash. */
+    private File file;
+
+    @Before
+    public void setUp() {
+        freshRepo();
+        writeFile("r.txt", "abc");
+        file = Utils.join(Repository.CWD, "r.txt");
+    }
+
+    /** An entry saved just after its file changed is smudged, so a change
+     *  that keeps the size and modification time is still seen. */
+    @Test
+    public void testRacyEntryIsSmudged() {
+        long mtime = file.lastModified();
+        StatIndex index = StatIndex.load();
+        String abc = index.blobId("r.txt", file);
+        assertEquals(Utils.sha1("abc"), abc);
+        index.save();
+
+        StatIndex loaded = StatIndex.load();
+        assertFalse(loaded.isUnchanged("r.txt", file, ObjectId.fromHex(abc)));
+        writeFile("r.txt", "xyz");
+        file.setLastModified(mtime);
+        assertEquals(Utils.sha1("xyz"), loaded.blobId("r.txt", file));
+    }
+
+    /** An entry for a file that has not changed for a while is trusted. */
+    @Test
+    public void testOldEntryIsTrusted() {
+        file.setLastModified(System.currentTimeMillis() - 60_000);
+        StatIndex index = StatIndex.load();
+        String abc = index.blobId("r.txt", file);
+        index.save();
+
+        StatIndex loaded = StatIndex.load();
+        assertTrue(loaded.isUnchanged("r.txt", file, ObjectId.fromHex(abc)));
+        assertFalse(loaded.isUnchanged("r.txt", file, ObjectId.fromHex(Utils.sha1("x"))));
+        assertEquals(abc, loaded.blobId("r.txt", file));
+    }
+
+    /** A change of size is seen whatever the modification time. */
+    @Test
+    public void testSizeChange() {
+        long mtime = System.currentTimeMillis() - 60_000;
+        file.setLastModified(mtime);
+        StatIndex index = StatIndex.load();
+        index.blobId("r.txt", file);
+        index.save();
+
+        writeFile("r.txt", "abcd");
+        file.setLastModified(mtime);
+        assertEquals(Utils.sha1("abcd"), StatIndex.load().blobId("r.txt", file));
+    }
+}
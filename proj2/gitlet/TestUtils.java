@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/** Utilities for the unit tests of gitlet.  The tests run gitlet
+ *  commands in their own JVM, as the daemon does (see InProcess), on a
+ *  repository in the working directory, so run them in a scratch
+ *  directory, with {@link ExitTrap} as the system class loader:
+ *      java -Djava.system.class.loader=gitlet.ExitTrap \
+ *          org.junit.runner.JUnitCore gitlet.TestCommitGraph ...
+ *  mvn test does both, through the surefire settings of pom.xml.
+ *
+ *  @author Alec Luk
+ */
+public class TestUtils {
+
+    /** Files and directories the tests have written in the working
+     *  directory. */
+    private static final Set<File> WRITTEN = new HashSet<>();
+
+    /** Removes the repository in the working directory and every file the
+     *  tests wrote there, puts back the default object and ref stores,
+     *  and initializes a new repository. */
+    public static void freshRepo() {
+        deleteTree(Repository.GITLET_DIR);
+        for (File file : WRITTEN) {
+            deleteTree(file);
+        }
+        WRITTEN.clear();
+        ObjectStore.INSTALLED.clear();
+        RefStore.INSTALLED.clear();
+        gitlet("init");
+    }
+
+    /** Deletes FILE and, if it is a directory, everything in it. */
+    public static void deleteTree(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File inner : files) {
+                deleteTree(inner);
+            }
+        }
+        file.delete();
+    }
+
+    /** Writes TEXT to the file NAME of the working directory, which may
+     *  be a path with '/' separators; missing directories are made. */
+    public static void writeFile(String name, String text) {
+        File file = Utils.join(Repository.CWD, name);
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, text);
+        WRITTEN.add(Utils.join(Repository.CWD, name.split("/")[0]));
+    }
+
+    /** Returns the contents of the file NAME of the working directory, or
+     *  null if there is none. */
+    public static String readFile(String name) {
+        File file = Utils.join(Repository.CWD, name);
+        return file.isFile() ? Utils.readContentsAsString(file) : null;
+    }
+
+    /** Runs the gitlet command ARGS, checks that it exits normally, and
+     *  returns what it printed. */
+    public static String gitlet(String... args) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int status = InProcess.run(args, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        String output = bytes.toString(StandardCharsets.UTF_8);
+        assertEquals("exit status of " + String.join(" ", args) + ": " + output,
+                     0, status);
+        return output;
+    }
+
+    /** Adds and commits TEXT as the file NAME with message MESSAGE, and
+     *  returns the id of the new commit. */
+    public static String commitFile(String name, String text, String message) {
+        writeFile(name, text);
+        gitlet("add", name);
+        gitlet("commit", message);
+        return head();
+    }
+
+    /** Returns the id of the head commit of the current branch. */
+    public static String head() {
+        RefStore refs = RefStore.current();
+        return refs.heads().get(refs.currentBranch());
+    }
+}
@@ -0,0 +1,58 @@
+package gitlet;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static gitlet.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** Tests the walk of the working tree.
+ *
+ *  @author Alec Luk
+ */
+public class TestWorkTree {
+
+    @Before
+    public void setUp() {
+        freshRepo();
+        writeFile("a.txt", "a");
+        writeFile("dir/b.txt", "b");
+        writeFile("dir/sub/c.txt", "c");
+        writeFile("dir/skip.log", "log");
+        writeFile("build/out.txt", "out");
+    }
+
+    /** Files in subdirectories are found, named by relative path. */
+    @Test
+    public void testFiles() {
+        List<String> files = new WorkTree(Repository.CWD).files();
+        assertEquals(List.of("a.txt", "build/out.txt", "dir/b.txt", "dir/skip.log",
+                             "dir/sub/c.txt"), files);
+    }
+
+    /** .gitletignore globs cut off files and whole directories, and
+     *  .gitlet is never walked. */
+    @Test
+    public void testIgnored() {
+        writeFile(WorkTree.IGNORE_FILE, "# build output\nbuild\n*.log\n");
+        WorkTree tree = new WorkTree(Repository.CWD);
+        assertEquals(List.of(".gitletignore", "a.txt", "dir/b.txt", "dir/sub/c.txt"),
+                     tree.files());
+        assertTrue(tree.isIgnored(".gitlet", ".gitlet"));
+        assertFalse(tree.isIgnored("dir/b.txt", "b.txt"));
+    }
+
+    /** Blob ids are the hashes of the files' contents. */
+    @Test
+    public void testBlobIds() {
+        writeFile(WorkTree.IGNORE_FILE, "build\n*.log\n");
+        Map<String, String> ids = new WorkTree(Repository.CWD).blobIds(StatIndex.load());
+        assertEquals(4, ids.size());
+        assertEquals(Utils.sha1("a"), ids.get("a.txt"));
+        assertEquals(Utils.sha1("b"), ids.get("dir/b.txt"));
+        assertEquals(Utils.sha1("c"), ids.get("dir/sub/c.txt"));
+    }
+}
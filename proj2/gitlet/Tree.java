@@ -0,0 +1,196 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** A tree object: one directory level of a commit's file table.  Each
+ *  entry maps a name either to a blob id or to the id of a subtree.
+ *  Trees are stored content-addressed like blobs, so a directory that
+ *  did not change between two commits is stored once and shared by id,
+ *  and comparing two trees can skip any subtree whose id is the same on
+ *  both sides.
+ *
+ *  A tree is stored as the magic "GTRE" and a version byte, followed by
+ *  an entry count and the entries sorted by name.  Each entry is a kind
+ *  byte (BLOB or TREE), the name as length-prefixed UTF-8, and a raw
+ *  20-byte id.
+ *
+ *  @author Alec Luk
+ */
+class Tree {
+
+    /** The directory holding tree objects. */
+    static final File TREES_DIR = join(GITLET_DIR, "trees");
+    /** Magic number at the start of a tree object. */
+    private static final int MAGIC = 0x47545245;
+    /** Version of the tree encoding. */
+    private static final int VERSION = 1;
+    /** Kind of an entry naming a blob. */
+    private static final int BLOB = 0;
+    /** Kind of an entry naming a subtree. */
+    private static final int TREE = 1;
+    /** Separator of the components of a path. */
+    static final char SEPARATOR = '/';
+
+    /** The blob entries of this tree, by name. */
+    private final TreeMap<String, ObjectId> blobs = new TreeMap<>();
+    /** The subtree entries of this tree, by name. */
+    private final TreeMap<String, ObjectId> subtrees = new TreeMap<>();
+
+    /** Stores the trees for the file table FILES, which maps paths
+     *  (components separated by SEPARATOR) to blob ids, and returns the
+     *  id of the top tree.  Trees that are already stored are not
+     *  written again. */
+    static ObjectId write(Map<String, String> files) {
+        TreeMap<String, TreeMap<String, String>> dirs = new TreeMap<>();
+        TreeMap<String, String> top = new TreeMap<>();
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            String path = entry.getKey();
+            int slash = path.indexOf(SEPARATOR);
+            if (slash < 0) {
+                top.put(path, entry.getValue());
+            } else {
+                dirs.computeIfAbsent(path.substring(0, slash), k -> new TreeMap<>())
+                    .put(path.substring(slash + 1), entry.getValue());
+            }
+        }
+        Tree tree = new Tree();
+        for (Map.Entry<String, String> entry : top.entrySet()) {
+            tree.blobs.put(entry.getKey(), ObjectId.fromHex(entry.getValue()));
+        }
+        for (Map.Entry<String, TreeMap<String, String>> dir : dirs.entrySet()) {
+            tree.subtrees.put(dir.getKey(), write(dir.getValue()));
+        }
+        byte[] encoded = tree.encode();
+        ObjectId id = ObjectId.fromHex(sha1(encoded));
+        File file = ObjectPaths.of(TREES_DIR, id.toString());
+        if (!objectExists(file)) {
+            writeObjectContents(file, encoded);
+        }
+        return id;
+    }
+
+    /** Returns the file table of tree ID: every path under it mapped to
+     *  its blob id. */
+    static HashMap<String, String> read(ObjectId id) {
+        HashMap<String, String> result = new HashMap<>();
+        readInto(id, "", result);
+        return result;
+    }
+
+    /** Adds the files of tree ID to RESULT, with PREFIX before each path. */
+    private static void readInto(ObjectId id, String prefix, Map<String, String> result) {
+        Tree tree = load(id);
+        for (Map.Entry<String, ObjectId> entry : tree.blobs.entrySet()) {
+            result.put(prefix + entry.getKey(), entry.getValue().toString());
+        }
+        for (Map.Entry<String, ObjectId> entry : tree.subtrees.entrySet()) {
+            readInto(entry.getValue(), prefix + entry.getKey() + SEPARATOR, result);
+        }
+    }
+
+    /** Calls BLOBACTION on the id of each blob entry of tree ID, and
+     *  SUBTREEACTION on the id of each of its subtrees. */
+    static void forEachEntry(ObjectId id, Consumer<ObjectId> blobAction,
+                             Consumer<ObjectId> subtreeAction) {
+        Tree tree = load(id);
+        tree.blobs.values().forEach(blobAction);
+        tree.subtrees.values().forEach(subtreeAction);
+    }
+
+    /** Returns the paths whose blob differs between trees FROM and TO,
+     *  either of which may be null for an empty tree.  Each path maps to
+     *  a pair {blob in FROM, blob in TO}, with null for a missing file.
+     *  Subtrees with the same id on both sides are not read at all. */
+    static TreeMap<String, ObjectId[]> diff(ObjectId from, ObjectId to) {
+        TreeMap<String, ObjectId[]> result = new TreeMap<>();
+        diffInto(from, to, "", result);
+        return result;
+    }
+
+    /** Adds the differences between trees FROM and TO to RESULT, with
+     *  PREFIX before each path. */
+    private static void diffInto(ObjectId from, ObjectId to, String prefix,
+                                 Map<String, ObjectId[]> result) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        Tree a = from == null ? new Tree() : load(from);
+        Tree b = to == null ? new Tree() : load(to);
+        TreeSet<String> names = new TreeSet<>(a.blobs.keySet());
+        names.addAll(b.blobs.keySet());
+        for (String name : names) {
+            ObjectId blobA = a.blobs.get(name);
+            ObjectId blobB = b.blobs.get(name);
+            if (blobA == null || !blobA.equals(blobB)) {
+                result.put(prefix + name, new ObjectId[] {blobA, blobB});
+            }
+        }
+        TreeSet<String> dirs = new TreeSet<>(a.subtrees.keySet());
+        dirs.addAll(b.subtrees.keySet());
+        for (String name : dirs) {
+            diffInto(a.subtrees.get(name), b.subtrees.get(name),
+                     prefix + name + SEPARATOR, result);
+        }
+    }
+
+    /** Returns the tree stored under ID. */
+    private static Tree load(ObjectId id) {
+        byte[] contents = readObjectContents(ObjectPaths.of(TREES_DIR, id.toString()));
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                throw error("Corrupt tree %s.", id);
+            }
+            Tree tree = new Tree();
+            int count = in.readInt();
+            for (int i = 0; i < count; i += 1) {
+                int kind = in.readUnsignedByte();
+                byte[] name = new byte[in.readInt()];
+                in.readFully(name);
+                (kind == TREE ? tree.subtrees : tree.blobs)
+                    .put(new String(name, StandardCharsets.UTF_8), ObjectId.read(in));
+            }
+            return tree;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the encoding of this tree. */
+    private byte[] encode() {
+        TreeSet<String> names = new TreeSet<>(blobs.keySet());
+        names.addAll(subtrees.keySet());
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(names.size());
+            for (String name : names) {
+                boolean isTree = subtrees.containsKey(name);
+                byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+                out.writeByte(isTree ? TREE : BLOB);
+                out.writeInt(nameBytes.length);
+                out.write(nameBytes);
+                (isTree ? subtrees.get(name) : blobs.get(name)).write(out);
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw error("Internal error serializing tree.");
+        }
+    }
+}
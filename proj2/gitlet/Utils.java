@@ -1,22 +1,32 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
+import java.util.zip.DeflaterOutputStream;
 
 
 /** Assorted utilities.
@@ -47,11 +57,7 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return toHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -63,18 +69,78 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the SHA-1 hash of the contents of FILE, which must be a
+     *  normal file.  The file is read in pieces, so it need not fit in
+     *  memory.  Throws IllegalArgumentException in case of problems. */
+    static String sha1(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buf = IO_BUFFER.get();
+            buf.clear();
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Hexadecimal digits, by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Returns the lowercase hexadecimal numeral for BYTES. */
+    static String toHex(byte[] bytes) {
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX, which
+     *  must have an even number of digits. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) ((Character.digit(hex.charAt(2 * i), 16) << 4)
+                                | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
      *  if FILE was deleted, and false otherwise.  Refuses to delete FILE
      *  and throws IllegalArgumentException unless the directory designated by
-     *  FILE also contains a directory named .gitlet. */
+     *  FILE, or one of the directories containing it, also contains a
+     *  directory named .gitlet.  Subdirectories of that directory left
+     *  empty by the deletion are removed as well. */
     static boolean restrictedDelete(File file) {
-        if (!(new File(file.getParentFile(), ".gitlet")).isDirectory()) {
+        File top = file.getAbsoluteFile().getParentFile();
+        while (top != null && !(new File(top, ".gitlet")).isDirectory()) {
+            top = top.getParentFile();
+        }
+        if (top == null) {
             throw new IllegalArgumentException("not .gitlet working directory");
         }
         if (!file.isDirectory()) {
-            return file.delete();
+            boolean deleted = file.delete();
+            for (File dir = file.getAbsoluteFile().getParentFile();
+                 deleted && !dir.equals(top) && dir.delete();
+                 dir = dir.getParentFile()) {
+                continue;
+            }
+            return deleted;
         } else {
             return false;
         }
@@ -112,7 +178,8 @@ class Utils {
     }
 
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
-     *  creating or overwriting it as needed.  Each object in CONTENTS may be
+     *  creating or overwriting it as needed, along with any missing
+     *  directories containing it.  Each object in CONTENTS may be
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
@@ -121,6 +188,10 @@ class Utils {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory()) {
+                parent.mkdirs();
+            }
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
@@ -137,24 +208,326 @@ class Utils {
     }
 
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
-     *  Throws IllegalArgumentException in case of problems. */
+     *  FILE may also name an object that has been folded into a pack.
+     *  Commits in the compact encoding of {@link Commit#encode()} are
+     *  decoded directly, and blobs stored as a {@link Delta} or as
+     *  {@link Chunks} are rebuilt as byte arrays; anything else is read
+     *  with Java deserialization.  Commits come from the
+     *  {@link CommitCache} when they can, and the Repository is loaded
+     *  from the {@link RefStore} of the current repository.  Throws IllegalArgumentException
+     *  in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
-        try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
-            T result = expectedClass.cast(in.readObject());
-            in.close();
-            return result;
+        if (expectedClass == Commit.class) {
+            return expectedClass.cast(CommitCache.get(file));
+        } else if (expectedClass == Repository.class) {
+            return expectedClass.cast(RefStore.current().load());
+        }
+        return readStoredObject(file, expectedClass);
+    }
+
+    /** Return an object of type T read from FILE, as for readObject, but
+     *  always decoding it afresh. */
+    static <T extends Serializable> T readStoredObject(File file,
+                                                       Class<T> expectedClass) {
+        try (InputStream in = new BufferedInputStream(openObject(file))) {
+            if (Commit.isEncoded(in)) {
+                return expectedClass.cast(Commit.decode(in));
+            } else if (Delta.isDelta(in)) {
+                return expectedClass.cast(Delta.read(in, ObjectPaths.dirOf(file)));
+            } else if (Chunks.isChunked(in)) {
+                return expectedClass.cast(Chunks.read(in));
+            }
+            ObjectInputStream objectIn = new ObjectInputStream(in);
+            return expectedClass.cast(objectIn.readObject());
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
-    /** Write OBJ to FILE. */
+    /** Return the stored contents of the object at FILE, which may be
+     *  loose or packed.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static byte[] readObjectContents(File file) {
+        try (InputStream in = openObject(file)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff the stream IN, which must support marks, starts
+     *  with the int MAGIC.  IN is left where it was. */
+    static boolean hasMagic(InputStream in, int magic) throws IOException {
+        in.mark(4);
+        int found = 0;
+        for (int i = 0; i < 4; i += 1) {
+            int b = in.read();
+            if (b < 0) {
+                in.reset();
+                return false;
+            }
+            found = (found << 8) | b;
+        }
+        in.reset();
+        return found == magic;
+    }
+
+    /** Writes STR to OUT as UTF-8 preceded by its length as an int. */
+    static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Reads a string written by writeString from IN. */
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Return a stream over the object stored at FILE, read from the
+     *  {@link ObjectStore} of FILE's directory. */
+    static InputStream openObject(File file) throws IOException {
+        ObjectStore store = storeOf(file);
+        if (store == null) {
+            return Compression.open(new FileInputStream(file));
+        }
+        return Compression.open(store.open(ObjectPaths.idOf(file)));
+    }
+
+    /** Return a stream that stores what is written to it as the object at
+     *  FILE once it is committed. */
+    static ObjectStore.Output createObject(File file) throws IOException {
+        ObjectStore store = storeOf(file);
+        if (store == null) {
+            return FileObjectStore.output(file);
+        }
+        return store.create(ObjectPaths.idOf(file));
+    }
+
+    /** Returns the file holding the stored form of the object at FILE by
+     *  itself, or null if its store keeps it some other way. */
+    static File looseObject(File file) {
+        ObjectStore store = storeOf(file);
+        if (store == null) {
+            return file.isFile() ? file : null;
+        }
+        return store.looseFile(ObjectPaths.idOf(file));
+    }
+
+    /** Returns the store of the object directory holding FILE, or null if
+     *  FILE is not in an object directory. */
+    private static ObjectStore storeOf(File file) {
+        File dir = ObjectPaths.dirOf(file);
+        return dir != null && ObjectPaths.isObjectDir(dir) ? ObjectStore.of(dir) : null;
+    }
+
+    /* BLOBS */
+
+    /** The start of a blob file: the Java serialization of a byte array
+     *  up to, but not including, its int length. */
+    private static final byte[] BLOB_PREFIX;
+
+    static {
+        byte[] empty = serialize(new byte[0]);
+        BLOB_PREFIX = Arrays.copyOf(empty, empty.length - 4);
+    }
+
+    /** A reusable direct buffer for streaming I/O, one per thread. */
+    private static final ThreadLocal<ByteBuffer> IO_BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1 << 16));
+
+    /** Write the contents of the normal file SOURCE to the blob file BLOB,
+     *  unless it is already stored, in the form writeObject(BLOB,
+     *  readContents(SOURCE)) would produce.  A file small enough to be
+     *  stored as a {@link Delta} is read whole to look for a base; a
+     *  larger one is copied directly from file to file, chunked or
+     *  compressed as the repository's settings ask, without holding it in
+     *  memory.  Throws IllegalArgumentException in case of problems. */
+    static void writeBlob(File blob, File source) {
+        if (objectExists(blob)) {
+            return;
+        } else if (Chunks.wanted(source.length())) {
+            try {
+                Chunks.write(blob, new FileInputStream(source));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return;
+        } else if (source.length() <= Delta.MAX_SIZE) {
+            Delta.write(blob, readContents(source));
+            return;
+        } else if (source.length() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("file too large for a blob");
+        } else if (Compression.level() != 0) {
+            try (InputStream in = new FileInputStream(source);
+                 ObjectStore.Output stored = createObject(blob);
+                 DeflaterOutputStream out = Compression.compressing(
+                     stored, BLOB_PREFIX.length + 4 + source.length())) {
+                out.write(BLOB_PREFIX);
+                out.write(ByteBuffer.allocate(4).putInt((int) source.length()).array());
+                in.transferTo(out);
+                out.finish();
+                stored.commit();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return;
+        }
+        try (FileChannel in = FileChannel.open(source.toPath());
+             ObjectStore.Output stored = createObject(blob)) {
+            WritableByteChannel out = stored.channel();
+            long size = in.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("file too large for a blob");
+            }
+            ByteBuffer header = ByteBuffer.allocate(BLOB_PREFIX.length + 4);
+            header.put(BLOB_PREFIX).putInt((int) size).flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (long done = 0; done < size; ) {
+                done += in.transferTo(done, size - done, out);
+            }
+            stored.commit();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the contents held in the blob file BLOB to DEST, creating or
+     *  overwriting it, without holding them in memory.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void copyBlob(File blob, File dest) {
+        File loose = looseObject(blob);
+        long start = loose == null ? -1 : blobDataStart(loose);
+        if (start < 0 && Delta.isDelta(blob)) {
+            Delta.copy(blob, dest);
+            return;
+        } else if (start < 0 && Chunks.isChunked(blob)) {
+            Chunks.copy(blob, dest);
+            return;
+        } else if (start < 0) {
+            copyStoredBlob(blob, dest);
+            return;
+        }
+        try (FileChannel in = FileChannel.open(loose.toPath());
+             FileChannel out = FileChannel.open(dest.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long done = start; done < size; ) {
+                done += in.transferTo(done, size - done, out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the contents of the compressed or packed blob BLOB to DEST,
+     *  a buffer at a time. */
+    private static void copyStoredBlob(File blob, File dest) {
+        try (InputStream in = openObject(blob)) {
+            byte[] header = in.readNBytes(BLOB_PREFIX.length + 4);
+            if (header.length < BLOB_PREFIX.length + 4
+                || !Arrays.equals(header, 0, BLOB_PREFIX.length,
+                                  BLOB_PREFIX, 0, BLOB_PREFIX.length)) {
+                writeContents(dest, (Object) readObject(blob, byte[].class));
+                return;
+            }
+            try (OutputStream out = new FileOutputStream(dest)) {
+                in.transferTo(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the offset of the data in the loose blob file BLOB, as
+     *  found by looseObject, or -1 if BLOB is not a loose file in the
+     *  usual blob form. */
+    static long blobDataStart(File blob) {
+        if (!blob.isFile()) {
+            return -1;
+        }
+        try (FileChannel in = FileChannel.open(blob.toPath())) {
+            ByteBuffer header = ByteBuffer.allocate(BLOB_PREFIX.length + 4);
+            while (header.hasRemaining() && in.read(header) >= 0) {
+                continue;
+            }
+            if (header.hasRemaining()
+                || !Arrays.equals(Arrays.copyOf(header.array(), BLOB_PREFIX.length),
+                                  BLOB_PREFIX)
+                || header.getInt(BLOB_PREFIX.length) != in.size() - header.capacity()) {
+                return -1;
+            }
+            return header.capacity();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* OBJECTS */
+
+    /** Returns true iff FILE names a stored object, whether it is loose
+     *  or packed.  Use this rather than FILE.exists() for objects. */
+    static boolean objectExists(File file) {
+        ObjectStore store = storeOf(file);
+        return store == null ? file.isFile() : store.contains(ObjectPaths.idOf(file));
+    }
+
+    /** Write OBJ to FILE.  A commit is also recorded in the repository's
+     *  side indexes under the name of FILE, its id.  The contents of a
+     *  blob may be stored as a {@link Delta} against an earlier blob or
+     *  as {@link Chunks}, and objects are compressed as the repository's
+     *  settings ask.  The Repository is saved to the {@link RefStore} of
+     *  the current repository, which throws GitletException if that
+     *  would undo another command's change. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        if (obj instanceof byte[] && isBlobFile(file)) {
+            byte[] contents = (byte[]) obj;
+            if (!Chunks.wanted(contents.length)) {
+                Delta.write(file, contents);
+            } else if (!objectExists(file)) {
+                Chunks.write(file, contents);
+            }
+            return;
+        } else if (obj instanceof Commit) {
+            writeObjectContents(file, serialize(obj));
+        } else if (obj instanceof Repository) {
+            RefStore.current().save((Repository) obj);
+        } else {
+            storeContents(file, serialize(obj));
+        }
+        if (obj instanceof Commit) {
+            ((Commit) obj).indexAs(ObjectPaths.idOf(file));
+        }
+    }
+
+    /** Write CONTENTS to FILE as a loose object, compressed as the
+     *  repository's settings ask.  Read it back with readObjectContents. */
+    static void writeObjectContents(File file, byte[] contents) {
+        storeContents(file, Compression.compress(contents));
+    }
+
+    /** Write CONTENTS to FILE as they are, through the store of FILE's
+     *  directory if it is in an object directory. */
+    private static void storeContents(File file, byte[] contents) {
+        ObjectStore store = storeOf(file);
+        if (store == null) {
+            writeContents(file, contents);
+        } else {
+            store.write(ObjectPaths.idOf(file), contents);
+        }
+    }
+
+    /** Returns true iff FILE is in the repository's blobs directory. */
+    private static boolean isBlobFile(File file) {
+        File dir = ObjectPaths.dirOf(file.getAbsoluteFile());
+        return dir != null && dir.equals(Repository.BLOBS_DIR.getAbsoluteFile());
     }
 
     /* DIRECTORIES */
@@ -170,15 +543,19 @@ class Utils {
 
     /** Returns a list of the names of all plain files in the directory DIR, in
      *  lexicographic order as Java Strings.  Returns null if DIR does
-     *  not denote a directory. */
+     *  not denote a directory.  For an object directory under .gitlet, the
+     *  names are the ids of the objects in its {@link ObjectStore}. */
     static List<String> plainFilenamesIn(File dir) {
+        if (ObjectPaths.isObjectDir(dir)) {
+            List<String> ids = ObjectStore.of(dir).ids();
+            return ids.isEmpty() && !dir.isDirectory() ? null : ids;
+        }
         String[] files = dir.list(PLAIN_FILES);
         if (files == null) {
             return null;
-        } else {
-            Arrays.sort(files);
-            return Arrays.asList(files);
         }
+        Arrays.sort(files);
+        return Arrays.asList(files);
     }
 
     /** Returns a list of the names of all plain files in the directory DIR, in
@@ -199,16 +576,25 @@ class Utils {
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,
      *  analogous to the {@link java.nio.file.Paths.#get(String, String[])}
-     *  method. */
+     *  method.  An object directory joined to an id gives the file where
+     *  that object is stored loose, as placed by {@link ObjectPaths}. */
     static File join(File first, String... others) {
+        if (others.length == 1 && ObjectPaths.isObjectDir(first)) {
+            return ObjectPaths.of(first, others[0]);
+        }
         return Paths.get(first.getPath(), others).toFile();
     }
 
 
     /* SERIALIZATION UTILITIES */
 
-    /** Returns a byte array containing the serialized contents of OBJ. */
+    /** Returns a byte array containing the serialized contents of OBJ.
+     *  Commits use their own compact encoding rather than Java
+     *  serialization. */
     static byte[] serialize(Serializable obj) {
+        if (obj instanceof Commit) {
+            return ((Commit) obj).encode();
+        }
         try {
             ByteArrayOutputStream stream = new ByteArrayOutputStream();
             ObjectOutputStream objectStream = new ObjectOutputStream(stream);
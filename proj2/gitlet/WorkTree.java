@@ -0,0 +1,148 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import static gitlet.Utils.*;
+
+/** The working tree: every file under the working directory, including
+ *  those in subdirectories, named by its path relative to the working
+ *  directory with components separated by {@link Tree#SEPARATOR}.
+ *
+ *  The walk runs on a fork-join pool with one task per directory, so
+ *  directories are listed in parallel.  Ignored paths (the .gitlet
+ *  directory and anything matching a glob in .gitletignore) are cut off
+ *  before they are entered.  When blob ids are wanted, each file is
+ *  handed to its own hashing task as soon as the walk finds it, so
+ *  hashing proceeds behind the walk on all cores.
+ *
+ *  @author Alec Luk
+ */
+class WorkTree {
+
+    /** Name of the file listing ignored paths, one glob per line. */
+    static final String IGNORE_FILE = ".gitletignore";
+
+    /** The top of the working tree. */
+    private final File root;
+    /** Globs of ignored paths. */
+    private final List<PathMatcher> ignored = new ArrayList<>();
+
+    /** A working tree rooted at ROOT. */
+    WorkTree(File root) {
+        this.root = root;
+        File ignoreFile = join(root, IGNORE_FILE);
+        if (ignoreFile.isFile()) {
+            for (String line : readContentsAsString(ignoreFile).split("\n")) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    ignored.add(FileSystems.getDefault().getPathMatcher("glob:" + line));
+                }
+            }
+        }
+    }
+
+    /** Returns the paths of all files in this tree that are not ignored,
+     *  in lexicographic order. */
+    List<String> files() {
+        ConcurrentSkipListMap<String, String> found = new ConcurrentSkipListMap<>();
+        ForkJoinPool.commonPool().invoke(new Walk(root, "", found, null));
+        return new ArrayList<>(found.keySet());
+    }
+
+    /** Returns the blob id of every file in this tree that is not ignored,
+     *  by path.  Ids come from INDEX where its stat data allow, and files
+     *  are hashed otherwise. */
+    TreeMap<String, String> blobIds(StatIndex index) {
+        ConcurrentSkipListMap<String, String> found = new ConcurrentSkipListMap<>();
+        ForkJoinPool.commonPool().invoke(new Walk(root, "", found, index));
+        return new TreeMap<>(found);
+    }
+
+    /** Returns true iff the file or directory at relative PATH, whose last
+     *  component is NAME, is ignored. */
+    boolean isIgnored(String path, String name) {
+        if (name.equals(".gitlet")) {
+            return true;
+        }
+        Path asPath = Paths.get(path);
+        Path asName = Paths.get(name);
+        for (PathMatcher matcher : ignored) {
+            if (matcher.matches(asPath) || matcher.matches(asName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the path of FILE relative to the top of this tree. */
+    String pathOf(File file) {
+        return root.toPath().relativize(file.toPath()).toString()
+            .replace(File.separatorChar, Tree.SEPARATOR);
+    }
+
+    /** The task of walking one directory. */
+    private class Walk extends RecursiveAction {
+        /** Tasks are never serialized; this only keeps the compiler
+         *  quiet. */
+        private static final long serialVersionUID = 1L;
+
+        /** The directory to walk. */
+        private final File dir;
+        /** The path of DIR relative to the top, ending in a separator
+         *  unless it is empty. */
+        private final String prefix;
+        /** Where found files go, mapped to their blob ids or to "". */
+        private final Map<String, String> found;
+        /** The stat cache to hash through, or null not to hash. */
+        private final StatIndex index;
+
+        /** Walks DIR, at relative PREFIX, into FOUND, hashing through
+         *  INDEX if it is not null. */
+        Walk(File dir, String prefix, Map<String, String> found, StatIndex index) {
+            this.dir = dir;
+            this.prefix = prefix;
+            this.found = found;
+            this.index = index;
+        }
+
+        @Override
+        protected void compute() {
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return;
+            }
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (File child : children) {
+                String path = prefix + child.getName();
+                if (isIgnored(path, child.getName())) {
+                    continue;
+                }
+                if (child.isDirectory()) {
+                    tasks.add(new Walk(child, path + Tree.SEPARATOR, found, index).fork());
+                } else if (child.isFile()) {
+                    if (index == null) {
+                        found.put(path, "");
+                    } else {
+                        tasks.add(ForkJoinTask.adapt(
+                            () -> found.put(path, index.blobId(path, child))).fork());
+                    }
+                }
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+    }
+}